@@ -1,3 +1,4 @@
+import gg.jte.ContentType
 import org.gradle.testing.jacoco.plugins.JacocoPluginExtension
 
 plugins {
@@ -5,6 +6,8 @@ plugins {
     application
     jacoco
     checkstyle
+    id("me.champeau.jmh") version "0.7.3"
+    id("gg.jte.gradle") version "3.1.9"
 }
 
 group = "hexlet.code"
@@ -18,6 +21,11 @@ application {
     mainClass.set("hexlet.code.App")
 }
 
+java {
+    sourceCompatibility = JavaVersion.VERSION_21
+    targetCompatibility = JavaVersion.VERSION_21
+}
+
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.assertj:assertj-core:3.27.3")
@@ -27,6 +35,8 @@ dependencies {
     implementation("org.slf4j:slf4j-simple:2.0.7")
     implementation("io.javalin:javalin-rendering:6.1.3")
     implementation("gg.jte:jte:3.1.9")
+    implementation("com.fasterxml.jackson.core:jackson-databind:2.17.2")
+    implementation("com.fasterxml.jackson.datatype:jackson-datatype-jsr310:2.17.2")
     implementation("com.h2database:h2:2.2.220")
     implementation("com.zaxxer:HikariCP:5.0.1")
     compileOnly("org.projectlombok:lombok:1.18.30")
@@ -34,7 +44,8 @@ dependencies {
     implementation("org.postgresql:postgresql:42.7.1")
     testImplementation("io.javalin:javalin-testtools:6.7.0")
     implementation("com.konghq:unirest-java:3.14.5")
-    implementation("org.jsoup:jsoup:1.17.2")
+    implementation("org.apache.httpcomponents:httpclient:4.5.14")
+    implementation("org.jsoup:jsoup:1.18.3")
     testImplementation("com.squareup.okhttp3:mockwebserver:4.12.0")
 }
 
@@ -59,6 +70,22 @@ tasks.named<JacocoReport>("jacocoTestReport") {
     }
 }
 
+// Templates are compiled to classes with the main sources; APP_ENV=development renders them from source instead
+jte {
+    sourceDirectory.set(file("src/main/resources/templates").toPath())
+    contentType.set(ContentType.Html)
+    generate()
+}
+
+// ./gradlew jmh -Pjmh.includes=ParserBenchmark; set BENCH_JDBC_URL to run repository benchmarks on Postgres
+jmh {
+    warmupIterations = 2
+    iterations = 5
+    fork = 1
+    includes = providers.gradleProperty("jmh.includes").map { listOf(it) }.orElse(listOf())
+    resultFormat = "JSON"
+}
+
 configure<JacocoPluginExtension> {
     toolVersion = "0.8.11"
 }
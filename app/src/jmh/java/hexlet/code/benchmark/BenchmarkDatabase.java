@@ -0,0 +1,60 @@
+package hexlet.code.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.BaseRepository;
+import hexlet.code.repository.Migrations;
+import hexlet.code.repository.QueryCache;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.util.Env;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+final class BenchmarkDatabase {
+    private static final String JDBC_URL = Env.get("BENCH_JDBC_URL", "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1");
+
+    private BenchmarkDatabase() {
+    }
+
+    static HikariDataSource open() throws SQLException {
+        var config = new HikariConfig();
+        config.setJdbcUrl(JDBC_URL);
+        var dataSource = new HikariDataSource(config);
+        Migrations.migrate(dataSource);
+        BaseRepository.dataSource = dataSource;
+        UrlRepository.deleteAll();
+        QueryCache.invalidateEverything();
+        return dataSource;
+    }
+
+    static List<Url> seed(int urls, int checksPerUrl) throws SQLException {
+        List<Url> saved = new ArrayList<>(urls);
+        List<UrlCheck> checks = new ArrayList<>();
+        for (int i = 0; i < urls; i++) {
+            var url = new Url("https://site" + i + ".example.com");
+            UrlRepository.save(url);
+            saved.add(url);
+            for (int j = 0; j < checksPerUrl; j++) {
+                checks.add(new UrlCheck(url.getId(), 200, "Title " + j, "Header", "Description",
+                        LocalDateTime.now()));
+            }
+            if (checks.size() >= 1000) {
+                UrlCheckRepository.saveAll(checks);
+                checks.clear();
+            }
+        }
+        UrlCheckRepository.saveAll(checks);
+        return saved;
+    }
+
+    static void close(HikariDataSource dataSource) throws SQLException {
+        UrlRepository.deleteAll();
+        dataSource.close();
+    }
+}
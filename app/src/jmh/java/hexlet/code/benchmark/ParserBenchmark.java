@@ -0,0 +1,56 @@
+package hexlet.code.benchmark;
+
+import hexlet.code.service.PageInfo;
+import hexlet.code.service.PageParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Streaming extraction used by checks versus a full Jsoup DOM of the same page
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParserBenchmark {
+    @Param({"16384", "1048576"})
+    public int pageBytes;
+
+    private String html;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        var page = new StringBuilder("<!DOCTYPE html><html><head><title>Benchmark page</title>"
+                + "<meta name=\"description\" content=\"Page used by the parser benchmark\"></head>"
+                + "<body><h1>Header</h1>");
+        while (page.length() < pageBytes) {
+            page.append("<div class=\"row\"><p>Lorem ipsum dolor sit amet</p><span>consectetur</span></div>\n");
+        }
+        html = page.append("</body></html>").toString();
+        bytes = html.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public PageInfo streaming() throws IOException {
+        return PageParser.parse(new ByteArrayInputStream(bytes), "text/html; charset=utf-8", bytes.length);
+    }
+
+    @Benchmark
+    public PageInfo streamingWithHash() throws IOException {
+        return PageParser.parse(new ByteArrayInputStream(bytes), "text/html; charset=utf-8", bytes.length, true);
+    }
+
+    @Benchmark
+    public PageInfo fullDocument() {
+        return PageParser.parseDocument(html);
+    }
+}
@@ -0,0 +1,56 @@
+package hexlet.code.benchmark;
+
+import gg.jte.TemplateEngine;
+import gg.jte.output.StringOutput;
+import hexlet.code.App;
+import hexlet.code.dto.UrlsPage;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderBenchmark {
+    @Param({"50", "1000", "10000"})
+    public int urlCount;
+
+    private TemplateEngine templateEngine;
+    private Map<String, Object> model;
+
+    @Setup
+    public void setUp() {
+        templateEngine = App.createTemplateEngine();
+        List<Url> urls = new ArrayList<>(urlCount);
+        var now = LocalDateTime.now();
+        for (long i = 1; i <= urlCount; i++) {
+            var url = new Url(i, "https://site" + i + ".example.com", now);
+            var check = new UrlCheck(i, 200, "Title", "Header", "Description", now);
+            check.setId(i);
+            url.setLatestCheck(check);
+            urls.add(url);
+        }
+        model = Map.of("page", new UrlsPage(urls, "Сайты", null, null));
+        render();
+    }
+
+    @Benchmark
+    public String render() {
+        var output = new StringOutput();
+        templateEngine.render("urls/index.jte", model, output);
+        return output.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package hexlet.code.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.QueryCache;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.repository.UrlSearchRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RepositoryBenchmark {
+    @Param({"1000", "10000"})
+    public int urlCount;
+
+    // findPage joins the latest check per url, so its cost follows the size of url_checks rather than urls
+    @Param({"10", "50"})
+    public int checksPerUrl;
+
+    private HikariDataSource dataSource;
+    private List<Url> urls;
+
+    @Setup
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDatabase.open();
+        urls = BenchmarkDatabase.seed(urlCount, checksPerUrl);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        BenchmarkDatabase.close(dataSource);
+    }
+
+    @Benchmark
+    public List<Url> findFirstPage() throws SQLException {
+        return UrlRepository.findPage(0, 50);
+    }
+
+    @Benchmark
+    public List<Url> findMiddlePage() throws SQLException {
+        return UrlRepository.findPage(urls.get(urls.size() / 2).getId(), 50);
+    }
+
+    @Benchmark
+    public List<Url> searchByTerm() throws SQLException {
+        return UrlSearchRepository.search("site12", 0, 50);
+    }
+
+    @Benchmark
+    public Optional<UrlCheck> findLatestByUrlIdCached() throws SQLException {
+        return UrlCheckRepository.findLatestByUrlId(randomUrl().getId());
+    }
+
+    @Benchmark
+    public Optional<UrlCheck> findLatestByUrlIdUncached() throws SQLException {
+        QueryCache.invalidateEverything();
+        return UrlCheckRepository.findLatestByUrlId(randomUrl().getId());
+    }
+
+    @Benchmark
+    public List<UrlCheck> findCheckHistoryPage() throws SQLException {
+        return UrlCheckRepository.findPageByUrlId(randomUrl().getId(), null, 25);
+    }
+
+    private Url randomUrl() {
+        return urls.get(ThreadLocalRandom.current().nextInt(urls.size()));
+    }
+}
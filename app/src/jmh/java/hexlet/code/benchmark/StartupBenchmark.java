@@ -0,0 +1,34 @@
+package hexlet.code.benchmark;
+
+import hexlet.code.App;
+import hexlet.code.repository.BaseRepository;
+import io.javalin.Javalin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// Single shots, so the first iteration of each fork shows the cold start: pool, migrations and template loading
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StartupBenchmark {
+    private static final String JDBC_URL = "jdbc:h2:mem:startup;DB_CLOSE_DELAY=-1";
+
+    @Benchmark
+    public Javalin getApp() throws SQLException {
+        return App.getApp(JDBC_URL);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closePool() {
+        BaseRepository.dataSource.close();
+    }
+}
@@ -0,0 +1,36 @@
+package hexlet.code.benchmark;
+
+import hexlet.code.util.UrlNormalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UrlNormalizerBenchmark {
+    private final String plain = "https://example.com";
+    private final String decorated = "  HTTPS://WWW.Example.com:8443/some/path?query=1#fragment ";
+    private final String invalid = "not a url";
+
+    @Benchmark
+    public Optional<String> plain() {
+        return UrlNormalizer.normalize(plain);
+    }
+
+    @Benchmark
+    public Optional<String> decorated() {
+        return UrlNormalizer.normalize(decorated);
+    }
+
+    @Benchmark
+    public Optional<String> invalid() {
+        return UrlNormalizer.normalize(invalid);
+    }
+}
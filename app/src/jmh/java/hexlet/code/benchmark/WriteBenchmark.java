@@ -0,0 +1,65 @@
+package hexlet.code.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.UrlCheckRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Inserts per second of the per-row save path versus one JDBC batch
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WriteBenchmark {
+    private static final int BATCH = 100;
+
+    private HikariDataSource dataSource;
+    private Url url;
+
+    @Setup
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDatabase.open();
+        url = BenchmarkDatabase.seed(1, 0).get(0);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        BenchmarkDatabase.close(dataSource);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void saveRowByRow() throws SQLException {
+        for (UrlCheck check : checks()) {
+            UrlCheckRepository.save(check);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void saveAllBatched() throws SQLException {
+        UrlCheckRepository.saveAll(checks());
+    }
+
+    private List<UrlCheck> checks() {
+        List<UrlCheck> checks = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            checks.add(new UrlCheck(url.getId(), 200, "Title", "Header", "Description", LocalDateTime.now()));
+        }
+        return checks;
+    }
+}
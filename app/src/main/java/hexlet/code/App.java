@@ -2,60 +2,86 @@ package hexlet.code;
 
 import gg.jte.ContentType;
 import gg.jte.TemplateEngine;
-import gg.jte.resolve.ResourceCodeResolver;
+import gg.jte.resolve.DirectoryCodeResolver;
+import hexlet.code.controller.ApiController;
+import hexlet.code.controller.MetricsController;
 import hexlet.code.controller.UrlCheckController;
 import hexlet.code.controller.UrlController;
 import hexlet.code.dto.BasePage;
+import hexlet.code.metrics.HttpMetrics;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.metrics.PoolMetricsTracker;
 import hexlet.code.model.NamedRoutes;
 import hexlet.code.repository.BaseRepository;
+import hexlet.code.repository.Migrations;
+import hexlet.code.repository.QueryCache;
+import hexlet.code.service.BatchCheckJob;
+import hexlet.code.service.CheckWriter;
+import hexlet.code.service.MonitorScheduler;
+import hexlet.code.service.RetentionJob;
+import hexlet.code.service.UrlCheckService;
+import hexlet.code.util.Env;
+import hexlet.code.util.StreamingRenderer;
 import io.javalin.Javalin;
 import io.javalin.http.NotFoundResponse;
+import io.javalin.json.JavalinJackson;
 import io.javalin.rendering.template.JavalinJte;
+import io.javalin.validation.ValidationException;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.nio.file.Path;
 import java.sql.SQLException;
-import java.util.stream.Collectors;
 
 import static io.javalin.rendering.template.TemplateUtil.model;
 
 
 public class    App {
     public static Javalin getApp(String databaseUrl) throws SQLException {
-        var hikariConfig = new HikariConfig();
-        hikariConfig.setJdbcUrl(databaseUrl);
-
-        var dataSource = new HikariDataSource(hikariConfig);
-
-        var url = App.class.getClassLoader().getResourceAsStream("schema.sql");
-        var sql = new BufferedReader(new InputStreamReader(url))
-                .lines().collect(Collectors.joining("\n"));
-
-        try (var connection = dataSource.getConnection();
-             var statement = connection.createStatement()) {
-            statement.execute(sql);
-        }
+        long start = System.nanoTime();
+        var dataSource = new HikariDataSource(createHikariConfig(databaseUrl));
+        PoolMetricsTracker.bind(dataSource);
+        Migrations.migrate(dataSource);
         BaseRepository.dataSource = dataSource;
+        QueryCache.invalidateEverything();
 
+        var templateEngine = createTemplateEngine();
+        StreamingRenderer.init(templateEngine);
         var app = Javalin.create(config -> {
             config.bundledPlugins.enableDevLogging();
-            config.fileRenderer(new JavalinJte(createTemplateEngine()));
+            config.fileRenderer(new JavalinJte(templateEngine));
+            config.jsonMapper(new JavalinJackson().updateMapper(mapper -> mapper
+                    .registerModule(new JavaTimeModule())
+                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)));
+            config.http.maxRequestSize = Env.getLong("HTTP_MAX_REQUEST_BYTES", 8 * 1024 * 1024);
         });
 
         app.exception(NotFoundResponse.class, (e, ctx) -> {
+            if (ApiController.isApiRequest(ctx)) {
+                ApiController.error(ctx, 404, e.getMessage());
+                return;
+            }
             ctx.status(404);
             ctx.result("Страница не найдена: " + e.getMessage());
         });
 
         app.exception(SQLException.class, (e, ctx) -> {
+            if (ApiController.isApiRequest(ctx)) {
+                ApiController.error(ctx, 500, "Ошибка базы данных: " + e.getMessage());
+                return;
+            }
             ctx.status(500);
             ctx.sessionAttribute("flash-error", "Ошибка базы данных: " + e.getMessage());
             ctx.redirect("/");
         });
 
         app.exception(Exception.class, (e, ctx) -> {
+            if (ApiController.isApiRequest(ctx)) {
+                ApiController.error(ctx, e instanceof ValidationException ? 400 : 500, e.getMessage());
+                return;
+            }
             ctx.status(500);
             ctx.sessionAttribute("flash-error", "Произошла ошибка: " + e.getMessage());
             ctx.redirect("/");
@@ -70,11 +96,40 @@ public class    App {
             ctx.render("index.jte", model("page", page));
         });
 
+        app.before(HttpMetrics::start);
+        app.after(HttpMetrics::record);
+
+        app.events(event -> {
+            event.serverStarted(BatchCheckJob::startSchedule);
+            event.serverStopping(BatchCheckJob::stopSchedule);
+            event.serverStarted(RetentionJob::startSchedule);
+            event.serverStopping(RetentionJob::stopSchedule);
+            event.serverStarted(MonitorScheduler::startSchedule);
+            event.serverStopping(MonitorScheduler::stopSchedule);
+            event.serverStarted(UrlCheckService::startSchedule);
+            event.serverStopping(UrlCheckService::stopSchedule);
+            event.serverStopped(CheckWriter::flush);
+        });
+
+        app.get(NamedRoutes.metricsPath(), MetricsController::index);
         app.post(NamedRoutes.urlsPath(), UrlController::create);
         app.get(NamedRoutes.urlsPath(), UrlController::index);
         app.get(NamedRoutes.urlPath("{id}"), UrlController::show);
+        app.post(NamedRoutes.urlsChecksPath(), UrlCheckController::createAll);
         app.post(NamedRoutes.urlPath("{id}") + "/checks", UrlCheckController::create);
 
+        app.get(NamedRoutes.apiUrlsPath(), ApiController::index);
+        app.post(NamedRoutes.apiUrlsPath(), ApiController::create);
+        app.post(NamedRoutes.apiUrlsImportPath(), ApiController::importUrls);
+        app.get(NamedRoutes.apiUrlPath("{id}"), ApiController::show);
+        app.get(NamedRoutes.apiUrlChecksPath("{id}"), ApiController::checks);
+        app.post(NamedRoutes.apiUrlChecksPath("{id}"), ApiController::createCheck);
+        app.get(NamedRoutes.apiUrlLatencyPath("{id}"), ApiController::latency);
+
+        double startupSeconds = (System.nanoTime() - start) / 1e9;
+        Metrics.gauge("app_startup_seconds", "Time spent building the application on the last start", "",
+                () -> startupSeconds);
+
         return app;
     }
 
@@ -96,10 +151,37 @@ public class    App {
         return System.getenv().getOrDefault("JDBC_DATABASE_URL", "jdbc:h2:mem:project;DB_CLOSE_DELAY=-1;");
     }
 
-    private static TemplateEngine createTemplateEngine() {
-        ClassLoader classLoader = App.class.getClassLoader();
-        ResourceCodeResolver codeResolver = new ResourceCodeResolver("templates", classLoader);
-        TemplateEngine templateEngine = TemplateEngine.create(codeResolver, ContentType.Html);
-        return templateEngine;
+    private static HikariConfig createHikariConfig(String databaseUrl) {
+        var hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(databaseUrl);
+        hikariConfig.setPoolName("app-pool");
+        hikariConfig.setMaximumPoolSize(Env.getInt("DB_POOL_MAX_SIZE", 10));
+        hikariConfig.setMinimumIdle(Env.getInt("DB_POOL_MIN_IDLE", hikariConfig.getMaximumPoolSize()));
+        hikariConfig.setConnectionTimeout(Env.getLong("DB_CONNECTION_TIMEOUT_MS", 30_000));
+        hikariConfig.setIdleTimeout(Env.getLong("DB_IDLE_TIMEOUT_MS", 600_000));
+        hikariConfig.setMaxLifetime(Env.getLong("DB_MAX_LIFETIME_MS", 1_800_000));
+        hikariConfig.setLeakDetectionThreshold(Env.getLong("DB_LEAK_DETECTION_MS", 0));
+        hikariConfig.setMetricsTrackerFactory(PoolMetricsTracker.FACTORY);
+
+        if (databaseUrl.startsWith("jdbc:postgresql:")) {
+            hikariConfig.addDataSourceProperty("prepareThreshold", Env.get("DB_PREPARE_THRESHOLD", "1"));
+            hikariConfig.addDataSourceProperty("preparedStatementCacheQueries",
+                    Env.get("DB_PREPARED_STATEMENT_CACHE_QUERIES", "512"));
+            hikariConfig.addDataSourceProperty("preparedStatementCacheSizeMiB",
+                    Env.get("DB_PREPARED_STATEMENT_CACHE_MIB", "16"));
+        }
+        return hikariConfig;
+    }
+
+    public static TemplateEngine createTemplateEngine() {
+        if (isDevelopment()) {
+            var codeResolver = new DirectoryCodeResolver(Path.of("src", "main", "resources", "templates"));
+            return TemplateEngine.create(codeResolver, ContentType.Html);
+        }
+        return TemplateEngine.createPrecompiled(ContentType.Html);
+    }
+
+    private static boolean isDevelopment() {
+        return Env.get("APP_ENV", "production").equals("development");
     }
 }
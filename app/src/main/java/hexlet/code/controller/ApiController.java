@@ -0,0 +1,220 @@
+package hexlet.code.controller;
+
+import hexlet.code.dto.UrlCheckJson;
+import hexlet.code.dto.UrlJson;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.NamedRoutes;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlLatency;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlLatencyRepository;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.repository.UrlSearchRepository;
+import hexlet.code.service.UrlCheckService;
+import hexlet.code.service.UrlImportService;
+import hexlet.code.util.UrlNormalizer;
+import io.javalin.http.Context;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+public class ApiController {
+    public static final int MAX_PAGE_SIZE = 500;
+
+    public record CreateUrlRequest(String url) {
+    }
+
+    public record ImportRequest(List<String> urls) {
+    }
+
+    public static void index(Context ctx) throws SQLException {
+        var term = ctx.queryParam("term");
+        int limit = limitOf(ctx, UrlController.PAGE_SIZE);
+        if (term != null && !term.isBlank()) {
+            int offset = Math.max(ctx.queryParamAsClass("offset", Integer.class).getOrDefault(0), 0);
+            List<Url> urls = UrlSearchRepository.search(term, offset, limit + 1);
+            Map<String, Object> body = new HashMap<>();
+            body.put("urls", urls.subList(0, Math.min(urls.size(), limit)).stream().map(UrlJson::of).toList());
+            body.put("nextOffset", urls.size() > limit ? offset + limit : null);
+            ctx.json(body);
+            return;
+        }
+
+        var after = ctx.queryParamAsClass("after", Long.class).getOrDefault(0L);
+        List<Url> urls = UrlRepository.findPage(after, limit + 1);
+        Long nextCursor = null;
+        if (urls.size() > limit) {
+            urls = urls.subList(0, limit);
+            nextCursor = urls.get(limit - 1).getId();
+        }
+        ctx.json(page("urls", urls.stream().map(UrlJson::of).toList(), nextCursor));
+    }
+
+    public static void show(Context ctx) throws SQLException {
+        var url = findUrl(ctx);
+        if (url.isEmpty()) {
+            return;
+        }
+        var latestCheck = UrlCheckRepository.findLatestByUrlId(url.get().getId()).map(UrlCheckJson::of);
+        ctx.json(new UrlJson(url.get().getId(), url.get().getName(), url.get().getCreatedAt(),
+                latestCheck.orElse(null)));
+    }
+
+    public static void create(Context ctx) throws SQLException {
+        var request = readBody(ctx, CreateUrlRequest.class);
+        if (request == null) {
+            return;
+        }
+        var input = request.url();
+        var normalizedUrl = input != null ? UrlNormalizer.normalize(input) : Optional.<String>empty();
+        if (normalizedUrl.isEmpty()) {
+            error(ctx, 422, "Некорректный URL");
+            return;
+        }
+
+        var url = new Url(normalizedUrl.get());
+        if (!UrlRepository.saveIfAbsent(url)) {
+            var existing = UrlRepository.findByName(url.getName()).orElseThrow();
+            ctx.status(409).json(UrlJson.of(existing));
+            return;
+        }
+        ctx.status(201).json(UrlJson.of(UrlRepository.find(url.getId()).orElse(url)));
+    }
+
+    public static void importUrls(Context ctx) throws SQLException {
+        var request = readBody(ctx, ImportRequest.class);
+        if (request == null) {
+            return;
+        }
+        if (request.urls() == null || request.urls().isEmpty()) {
+            error(ctx, 400, "Список urls пуст");
+            return;
+        }
+        if (request.urls().size() > UrlImportService.MAX_URLS) {
+            error(ctx, 413, "За один запрос можно добавить не больше "
+                    + UrlImportService.MAX_URLS + " адресов");
+            return;
+        }
+        ctx.json(UrlImportService.importUrls(request.urls()));
+    }
+
+    public static void checks(Context ctx) throws SQLException {
+        var url = findUrl(ctx);
+        if (url.isEmpty()) {
+            return;
+        }
+        Long before = ctx.queryParamAsClass("before", Long.class).allowNullable().get();
+        int limit = limitOf(ctx, UrlController.CHECKS_PAGE_SIZE);
+
+        List<UrlCheck> checks = UrlCheckRepository.findPageByUrlId(url.get().getId(), before, limit + 1);
+        Long nextCursor = null;
+        if (checks.size() > limit) {
+            checks = checks.subList(0, limit);
+            nextCursor = checks.get(limit - 1).getId();
+        }
+        ctx.json(page("checks", checks.stream().map(UrlCheckJson::of).toList(), nextCursor));
+    }
+
+    public static void createCheck(Context ctx) throws SQLException {
+        var url = findUrl(ctx);
+        if (url.isEmpty()) {
+            return;
+        }
+        var check = UrlCheckService.submit(url.get());
+        if (check.isEmpty()) {
+            error(ctx, 429, "Слишком много проверок в очереди, попробуйте позже");
+            return;
+        }
+        // The check itself is being updated by a worker already, so only what is known at submission is returned
+        ctx.status(202).json(Map.of(
+                "id", check.get().getId(),
+                "urlId", url.get().getId(),
+                "status", CheckStatus.QUEUED,
+                "checks", NamedRoutes.apiUrlChecksPath(url.get().getId().toString())));
+    }
+
+    // The hourly or daily rows of the last limit hours or days, oldest first, and all of them merged
+    public static void latency(Context ctx) throws SQLException {
+        var url = findUrl(ctx);
+        if (url.isEmpty()) {
+            return;
+        }
+        UrlLatency.Period period;
+        try {
+            period = UrlLatency.Period.valueOf(ctx.queryParamAsClass("resolution", String.class)
+                    .getOrDefault("hour").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            error(ctx, 400, "resolution должен быть hour или day");
+            return;
+        }
+        int limit = limitOf(ctx, period == UrlLatency.Period.HOUR ? 24 : 30);
+        var now = LocalDateTime.now();
+        var from = now.minus(limit - 1, period.getUnit());
+
+        List<UrlLatency> periods = UrlLatencyRepository.findByUrlId(url.get().getId(), period, from, now);
+        var summary = new UrlLatency(url.get().getId(), period, period.startOf(from));
+        periods.forEach(summary::merge);
+        Map<String, Object> body = new HashMap<>();
+        body.put("urlId", url.get().getId());
+        body.put("resolution", period.name().toLowerCase(Locale.ROOT));
+        body.put("summary", latencyJson(summary));
+        body.put("periods", periods.stream().map(ApiController::latencyJson).toList());
+        ctx.json(body);
+    }
+
+    public static boolean isApiRequest(Context ctx) {
+        return ctx.path().startsWith(NamedRoutes.apiUrlsPath());
+    }
+
+    public static void error(Context ctx, int status, String message) {
+        ctx.status(status).json(Map.of("error", message != null ? message : "Ошибка"));
+    }
+
+    private static <T> T readBody(Context ctx, Class<T> type) {
+        try {
+            return ctx.bodyAsClass(type);
+        } catch (Exception e) {
+            error(ctx, 400, "Некорректный JSON: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Optional<Url> findUrl(Context ctx) throws SQLException {
+        var id = ctx.pathParamAsClass("id", Long.class).get();
+        var url = UrlRepository.find(id);
+        if (url.isEmpty()) {
+            error(ctx, 404, "URL не найден");
+        }
+        return url;
+    }
+
+    private static int limitOf(Context ctx, int defaultLimit) {
+        int limit = ctx.queryParamAsClass("limit", Integer.class).getOrDefault(defaultLimit);
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    private static Map<String, Object> latencyJson(UrlLatency latency) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("start", latency.getPeriodStart());
+        body.put("checks", latency.getChecks());
+        body.put("meanMillis", latency.getMeanMillis());
+        body.put("maxMillis", latency.getChecks() > 0 ? latency.getMaxMillis() : null);
+        body.put("p50", latency.getP50());
+        body.put("p95", latency.getP95());
+        body.put("p99", latency.getP99());
+        return body;
+    }
+
+    private static Map<String, Object> page(String key, List<?> items, Long nextCursor) {
+        Map<String, Object> body = new HashMap<>();
+        body.put(key, items);
+        body.put("nextCursor", nextCursor);
+        return body;
+    }
+}
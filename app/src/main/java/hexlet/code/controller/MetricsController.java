@@ -0,0 +1,44 @@
+package hexlet.code.controller;
+
+import hexlet.code.metrics.Metrics;
+import hexlet.code.util.Env;
+import io.javalin.http.Context;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+public class MetricsController {
+    // Without METRICS_TOKEN only requests from the host itself are answered
+    private static final String TOKEN = Env.get("METRICS_TOKEN", "");
+
+    public static void index(Context ctx) {
+        if (!isAllowed(ctx)) {
+            ctx.status(401);
+            ctx.header("WWW-Authenticate", "Bearer");
+            return;
+        }
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+        ctx.result(Metrics.scrape());
+    }
+
+    private static boolean isAllowed(Context ctx) {
+        if (TOKEN.isBlank()) {
+            return isLoopback(ctx.req().getRemoteAddr());
+        }
+        var authorization = ctx.header("Authorization");
+        return authorization != null && MessageDigest.isEqual(
+                ("Bearer " + TOKEN).getBytes(StandardCharsets.UTF_8),
+                authorization.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isLoopback(String address) {
+        try {
+            // The remote address is always a literal, so this never resolves a name
+            return InetAddress.getByName(address).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
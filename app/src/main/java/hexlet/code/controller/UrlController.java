@@ -1,29 +1,42 @@
 package hexlet.code.controller;
 
 import hexlet.code.dto.BuildUrlPage;
+import hexlet.code.dto.TrendChart;
 import hexlet.code.dto.UrlPage;
 import hexlet.code.dto.UrlsPage;
 import hexlet.code.model.NamedRoutes;
 import hexlet.code.model.Url;
 import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlLatency;
 import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlLatencyRepository;
 import hexlet.code.repository.UrlRepository;
+import hexlet.code.repository.UrlScheduleRepository;
+import hexlet.code.repository.UrlSearchRepository;
+import hexlet.code.service.BatchCheckJob;
+import hexlet.code.service.HostGuard;
+import hexlet.code.util.Bytes;
+import hexlet.code.util.StreamingRenderer;
+import hexlet.code.util.UrlNormalizer;
 import io.javalin.http.Context;
 import io.javalin.http.NotFoundResponse;
 
-import java.net.MalformedURLException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.io.IOException;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static io.javalin.rendering.template.TemplateUtil.model;
 
 public class UrlController {
+    public static final int PAGE_SIZE = 50;
+    public static final int CHECKS_PAGE_SIZE = 25;
+    public static final int TREND_CHECKS = 100;
+    public static final int TREND_HOURS = 7 * 24;
+
     public static void build(Context ctx) {
         var page = new BuildUrlPage();
         ctx.render("urls/build.jte", model("page", page));
@@ -38,74 +51,79 @@ public class UrlController {
             return;
         }
 
-        URI uri;
-        try {
-            uri = new URI(inputUrl.trim());
-        } catch (URISyntaxException e) {
+        var normalizedUrl = UrlNormalizer.normalize(inputUrl);
+        if (normalizedUrl.isEmpty()) {
             ctx.sessionAttribute("flash-error", "Некорректный URL");
             ctx.redirect("/");
             return;
         }
 
-        if (!uri.isAbsolute()) {
-            ctx.sessionAttribute("flash-error", "Некорректный URL");
-            ctx.redirect("/");
+        Url newUrl = new Url(normalizedUrl.get());
+        if (!UrlRepository.saveIfAbsent(newUrl)) {
+            ctx.sessionAttribute("flash-error", "Страница уже существует");
+            ctx.redirect(NamedRoutes.urlsPath());
             return;
         }
 
-        URL url;
-        try {
-            url = uri.toURL();
-        } catch (MalformedURLException e) {
-            ctx.sessionAttribute("flash-error", "Некорректный URL");
-            ctx.redirect("/");
-            return;
-        }
+        ctx.sessionAttribute("flash", "Страница успешно добавлена");
+        ctx.redirect(NamedRoutes.urlsPath());
+    }
 
-        String protocol = url.getProtocol().toLowerCase();
-        String host = url.getHost().toLowerCase();
-        int port = url.getPort();
-        if (host.startsWith("www.")) {
-            host = host.substring(4);
-        }
+    public static void index(Context ctx) throws SQLException, IOException {
+        var term = ctx.queryParam("term");
+        var header = "Сайты";
 
-        if (host == null) {
-            ctx.sessionAttribute("flash-error", "Некорректный URL");
-            ctx.redirect("/");
+        boolean searching = term != null && !term.isBlank();
+        if (ctx.queryParamAsClass("all", Boolean.class).getOrDefault(false)) {
+            if (searching) {
+                renderAll(ctx, new UrlsPage(UrlSearchRepository.searchAll(term), header, term, null));
+                return;
+            }
+            var cursor = UrlRepository.openCursor();
+            if (cursor.isEmpty()) {
+                ctx.sessionAttribute("flash-error", "Полный список сейчас выгружается, попробуйте позже");
+                ctx.redirect(NamedRoutes.urlsPath());
+                return;
+            }
+            try (var rows = cursor.get()) {
+                renderAll(ctx, new UrlsPage(rows, header, term, null));
+            }
             return;
         }
 
-        String normalizedUrl = protocol + "://" + host + (port != -1 ? ":" + port : "");
-
-        List<Url> existingUrls = UrlRepository.getEntities();
-        boolean exists = existingUrls.stream()
-                .anyMatch(u -> u.getName().equalsIgnoreCase(normalizedUrl));
-
-        if (exists) {
-            ctx.sessionAttribute("flash-error", "Страница уже существует");
-            ctx.redirect(NamedRoutes.urlsPath());
+        if (searching) {
+            var offset = ctx.queryParamAsClass("offset", Integer.class).getOrDefault(0);
+            List<Url> urls = UrlSearchRepository.search(term, Math.max(offset, 0), PAGE_SIZE + 1);
+            var page = new UrlsPage(urls.subList(0, Math.min(urls.size(), PAGE_SIZE)), header, term, null);
+            if (urls.size() > PAGE_SIZE) {
+                page.setNextOffset(Math.max(offset, 0) + PAGE_SIZE);
+            }
+            prepareListing(ctx, page);
+            ctx.render("urls/index.jte", model("page", page));
             return;
         }
 
-        Url newUrl = new Url(normalizedUrl);
-        UrlRepository.save(newUrl);
+        var after = ctx.queryParamAsClass("after", Long.class).getOrDefault(0L);
+        List<Url> urls = UrlRepository.findPage(after, PAGE_SIZE + 1);
+        Long nextCursor = null;
+        if (urls.size() > PAGE_SIZE) {
+            urls = urls.subList(0, PAGE_SIZE);
+            nextCursor = urls.get(PAGE_SIZE - 1).getId();
+        }
 
-        ctx.sessionAttribute("flash", "Страница успешно добавлена");
-        ctx.redirect(NamedRoutes.urlsPath());
+        var page = new UrlsPage(urls, header, term, nextCursor);
+        prepareListing(ctx, page);
+        ctx.render("urls/index.jte", model("page", page));
     }
 
-    public static void index(Context ctx) throws SQLException {
-        var term = ctx.queryParam("term");
-        var header = "Сайты";
-
-        List<Url> allUrls = UrlRepository.getEntities();
-        Map<Long, UrlCheck> latestChecks = new HashMap<>();
-        for (Url url : allUrls) {
-            Optional<UrlCheck> check = UrlCheckRepository.findLatestByUrlId(url.getId());
-            check.ifPresent(c -> latestChecks.put(url.getId(), c));
-        }
+    private static void renderAll(Context ctx, UrlsPage page) throws IOException {
+        page.setShowingAll(true);
+        prepareListing(ctx, page);
+        StreamingRenderer.render(ctx, "urls/index.jte", model("page", page));
+    }
 
-        var page = new UrlsPage(allUrls, latestChecks, header, term);
+    private static void prepareListing(Context ctx, UrlsPage page) {
+        BatchCheckJob.getProgress().ifPresent(page::setBatchProgress);
         String flashSuccess = ctx.consumeSessionAttribute("flash");
         String flashError = ctx.consumeSessionAttribute("flash-error");
 
@@ -114,7 +132,6 @@ public class UrlController {
         } else if (flashError != null) {
             page.setFlashError(flashError);
         }
-        ctx.render("urls/index.jte", model("page", page));
     }
 
     public static void show(Context ctx) throws SQLException {
@@ -122,15 +139,41 @@ public class UrlController {
         Optional<Url> url = Optional.ofNullable(UrlRepository.find(id)
                 .orElseThrow(() -> new NotFoundResponse("URL не найден")));
 
-        List<UrlCheck> checks = UrlCheckRepository.findByUrlId(id);
-        var page = new UrlPage(url.get(), checks);
+        Long before = ctx.queryParamAsClass("before", Long.class).allowNullable().get();
+        List<UrlCheck> checks = UrlCheckRepository.findPageByUrlId(id, before, CHECKS_PAGE_SIZE + 1);
+        Long nextCursor = null;
+        if (checks.size() > CHECKS_PAGE_SIZE) {
+            checks = checks.subList(0, CHECKS_PAGE_SIZE);
+            nextCursor = checks.get(CHECKS_PAGE_SIZE - 1).getId();
+        }
+        var page = new UrlPage(url.get(), checks, nextCursor);
+        page.setHostState(HostGuard.stateOf(HostGuard.hostOf(url.get().getName())));
+        UrlScheduleRepository.find(id).ifPresent(page::setSchedule);
+        var now = LocalDateTime.now();
+        var hours = UrlLatencyRepository.findByUrlId(id, UrlLatency.Period.HOUR, now.minusHours(TREND_HOURS), now);
+        page.setTrends(trends(hours, UrlCheckRepository.findTimingsByUrlId(id, TREND_CHECKS)));
+        page.addLatency("За сутки",
+                UrlLatencyRepository.summarize(id, UrlLatency.Period.HOUR, now.minusHours(23), now));
+        page.addLatency("За 30 дней",
+                UrlLatencyRepository.summarize(id, UrlLatency.Period.DAY, now.minusDays(29), now));
         String flashSuccess = ctx.consumeSessionAttribute("flash");
         String flashError = ctx.consumeSessionAttribute("flash-error");
         if (flashSuccess != null) {
-            page.setFlashSuccess(flashSuccess);
+            page.setFlash(flashSuccess);
         } else if (flashError != null) {
             page.setFlashError(flashError);
         }
         ctx.render("urls/show.jte", model("page", page));
     }
+
+    // Response time comes from the hourly aggregates, sizes from the latest checks
+    private static List<TrendChart> trends(List<UrlLatency> hours, List<UrlCheck> checks) {
+        return Stream.of(
+                TrendChart.of("Время ответа, p95 по часам", hours, UrlLatency::getP95, ms -> ms + " мс"),
+                TrendChart.of("Первый байт", checks, UrlCheck::getTtfbMillis, ms -> ms + " мс"),
+                TrendChart.of("Размер страницы", checks, UrlCheck::getContentBytes, Bytes::format),
+                TrendChart.of("Передано", checks, UrlCheck::getTransferBytes, Bytes::format))
+                .filter(Objects::nonNull)
+                .toList();
+    }
 }
@@ -0,0 +1,59 @@
+package hexlet.code.dto;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+// One metric over a series of checks or periods, oldest first, drawn by the template as an SVG polyline
+@Getter
+public final class TrendChart {
+    public static final int WIDTH = 300;
+    public static final int HEIGHT = 60;
+    private static final int PADDING = 2;
+
+    private final String title;
+    private final String points;
+    private final String latest;
+    private final String max;
+
+    private TrendChart(String title, String points, String latest, String max) {
+        this.title = title;
+        this.points = points;
+        this.latest = latest;
+        this.max = max;
+    }
+
+    // Items without the metric are left out; null if none has it
+    public static <E, T extends Number> TrendChart of(String title, List<E> items,
+                                                      Function<E, T> metric, Function<T, String> format) {
+        List<T> values = new ArrayList<>(items.size());
+        for (E item : items) {
+            var value = metric.apply(item);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        if (values.isEmpty()) {
+            return null;
+        }
+        T max = values.get(0);
+        for (T value : values) {
+            if (value.doubleValue() > max.doubleValue()) {
+                max = value;
+            }
+        }
+        double scale = max.doubleValue() > 0 ? (HEIGHT - 2 * PADDING) / max.doubleValue() : 0;
+        double step = values.size() > 1 ? (double) WIDTH / (values.size() - 1) : 0;
+        List<String> points = new ArrayList<>(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            double x = values.size() > 1 ? i * step : WIDTH / 2.0;
+            double y = HEIGHT - PADDING - values.get(i).doubleValue() * scale;
+            points.add(String.format(Locale.ROOT, "%.1f,%.1f", x, y));
+        }
+        return new TrendChart(title, String.join(" ", points), format.apply(values.get(values.size() - 1)),
+                format.apply(max));
+    }
+}
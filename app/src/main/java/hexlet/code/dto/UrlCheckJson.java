@@ -0,0 +1,20 @@
+package hexlet.code.dto;
+
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.UrlCheck;
+
+import java.time.LocalDateTime;
+
+// What the JSON API shows of a check; validators and the body hash stay internal
+public record UrlCheckJson(Long id, Long urlId, CheckStatus status, Integer statusCode, String title, String h1,
+                           String description, boolean unchanged, String error, LocalDateTime createdAt,
+                           Integer dnsMillis, Integer connectMillis, Integer ttfbMillis, Integer totalMillis,
+                           Long transferBytes, Long contentBytes, Integer redirects, String finalUrl) {
+    public static UrlCheckJson of(UrlCheck check) {
+        return new UrlCheckJson(check.getId(), check.getUrlId(), check.getStatus(), check.getStatusCode(),
+                check.getTitle(), check.getH1(), check.getDescription(), check.isUnchanged(), check.getError(),
+                check.getCreatedAt(), check.getDnsMillis(), check.getConnectMillis(), check.getTtfbMillis(),
+                check.getTotalMillis(), check.getTransferBytes(), check.getContentBytes(), check.getRedirects(),
+                check.getFinalUrl());
+    }
+}
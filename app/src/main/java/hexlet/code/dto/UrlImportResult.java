@@ -0,0 +1,15 @@
+package hexlet.code.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@AllArgsConstructor
+@Getter
+public class UrlImportResult {
+    private int received;
+    private int created;
+    private int duplicates;
+    private List<String> invalid;
+}
@@ -0,0 +1,13 @@
+package hexlet.code.dto;
+
+import hexlet.code.model.Url;
+
+import java.time.LocalDateTime;
+
+public record UrlJson(Long id, String name, LocalDateTime createdAt, UrlCheckJson latestCheck) {
+    public static UrlJson of(Url url) {
+        var check = url.getLatestCheck();
+        return new UrlJson(url.getId(), url.getName(), url.getCreatedAt(),
+                check != null ? UrlCheckJson.of(check) : null);
+    }
+}
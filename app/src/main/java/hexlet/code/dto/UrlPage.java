@@ -2,14 +2,49 @@ package hexlet.code.dto;
 
 import hexlet.code.model.Url;
 import hexlet.code.model.UrlCheck;
-import lombok.AllArgsConstructor;
+import hexlet.code.model.UrlLatency;
+import hexlet.code.model.UrlSchedule;
+import hexlet.code.service.HostGuard;
+import hexlet.code.service.UrlCheckService;
 import lombok.Getter;
+import lombok.Setter;
 
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-@AllArgsConstructor
+// What every url page shows goes through the constructor; the optional parts are set afterwards
 @Getter
 public class UrlPage extends BasePage {
-    private Url url;
-    private List<UrlCheck> checks;
+    private final Url url;
+    private final List<UrlCheck> checks;
+    private final Long nextCursor;
+    @Setter
+    private HostGuard.State hostState;
+    @Setter
+    private UrlSchedule schedule;
+    @Setter
+    private List<TrendChart> trends = List.of();
+    // Response time summaries by the span they cover, only the spans that had timed checks
+    private final Map<String, UrlLatency> latencies = new LinkedHashMap<>();
+
+    public UrlPage(Url url, List<UrlCheck> checks, Long nextCursor) {
+        this.url = url;
+        this.checks = checks;
+        this.nextCursor = nextCursor;
+    }
+
+    public void addLatency(String span, UrlLatency latency) {
+        if (latency.getChecks() > 0) {
+            latencies.put(span, latency);
+        }
+    }
+
+    // Only checks that may still finish; older unfinished ones are about to be failed by the stale sweep
+    public boolean hasPendingChecks() {
+        var cutoff = LocalDateTime.now().minus(UrlCheckService.STALE_AFTER);
+        return checks.stream()
+                .anyMatch(check -> !check.getStatus().isFinished() && check.getCreatedAt().isAfter(cutoff));
+    }
 }
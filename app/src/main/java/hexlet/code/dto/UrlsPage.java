@@ -1,17 +1,34 @@
 package hexlet.code.dto;
 
-import java.util.List;
-import java.util.Map;
 import hexlet.code.model.Url;
-import hexlet.code.model.UrlCheck;
-import lombok.AllArgsConstructor;
+import hexlet.code.service.BatchCheckJob;
 import lombok.Getter;
+import lombok.Setter;
 
-@AllArgsConstructor
+// urls is a loaded page, an open cursor or lazily loaded search hits; the last two are read once, while the
+// template renders.
+// Listings page by nextCursor (the last id shown), ranked search results by nextOffset.
 @Getter
 public class UrlsPage extends BasePage {
-    private List<Url> urls;
-    private Map<Long, UrlCheck> latestChecks;
-    private String header;
-    private String term;
+    private final Iterable<Url> urls;
+    private final String header;
+    private final String term;
+    private final Long nextCursor;
+    @Setter
+    private Integer nextOffset;
+    @Setter
+    private boolean showingAll;
+    @Setter
+    private BatchCheckJob.Progress batchProgress;
+
+    public UrlsPage(Iterable<Url> urls, String header, String term, Long nextCursor) {
+        this.urls = urls;
+        this.header = header;
+        this.term = term;
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean isEmpty() {
+        return !urls.iterator().hasNext();
+    }
 }
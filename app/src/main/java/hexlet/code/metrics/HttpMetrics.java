@@ -0,0 +1,47 @@
+package hexlet.code.metrics;
+
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class HttpMetrics {
+    private static final String UNMATCHED = "unmatched";
+    private static final String START_ATTRIBUTE = "metrics-start-nanos";
+
+    // Keyed by method, then by route template, so a lookup for a known route builds no label strings
+    private static final Map<HandlerType, Map<String, Histogram>> TIMERS = new ConcurrentHashMap<>();
+
+    private HttpMetrics() {
+    }
+
+    public static void start(Context ctx) {
+        ctx.attribute(START_ATTRIBUTE, System.nanoTime());
+    }
+
+    public static void record(Context ctx) {
+        Long start = ctx.attribute(START_ATTRIBUTE);
+        if (start == null) {
+            return;
+        }
+        var route = ctx.endpointHandlerPath();
+        if (route == null || route.isEmpty()) {
+            route = UNMATCHED;
+        }
+        timer(ctx.method(), route).observeNanos(System.nanoTime() - start);
+    }
+
+    private static Histogram timer(HandlerType method, String route) {
+        var byRoute = TIMERS.get(method);
+        if (byRoute == null) {
+            byRoute = TIMERS.computeIfAbsent(method, key -> new ConcurrentHashMap<>());
+        }
+        var timer = byRoute.get(route);
+        if (timer == null) {
+            timer = byRoute.computeIfAbsent(route, key -> Metrics.histogram("http_request_duration_seconds",
+                    "HTTP request latency by route", "method=\"" + method + "\",route=\"" + key + "\""));
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,59 @@
+package hexlet.code.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+public final class Metrics {
+    public static final double[] LATENCY_BUCKETS = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    private record Family(String type, String help, Map<String, Object> children) {
+    }
+
+    public static Histogram histogram(String name, String help, String labels) {
+        return (Histogram) family(name, "histogram", help).children()
+                .computeIfAbsent(labels, key -> new Histogram(LATENCY_BUCKETS));
+    }
+
+    public static LongAdder counter(String name, String help, String labels) {
+        return (LongAdder) family(name, "counter", help).children()
+                .computeIfAbsent(labels, key -> new LongAdder());
+    }
+
+    public static void gauge(String name, String help, String labels, DoubleSupplier value) {
+        family(name, "gauge", help).children().put(labels, value);
+    }
+
+    public static String scrape() {
+        var out = new StringBuilder();
+        FAMILIES.forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help()).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type()).append('\n');
+            family.children().forEach((labels, child) -> {
+                if (child instanceof Histogram histogram) {
+                    histogram.writeTo(out, name, labels);
+                } else {
+                    double value = child instanceof LongAdder adder
+                            ? adder.sum()
+                            : ((DoubleSupplier) child).getAsDouble();
+                    out.append(name).append(labels.isEmpty() ? "" : "{" + labels + "}")
+                            .append(' ').append(value).append('\n');
+                }
+            });
+        });
+        return out.toString();
+    }
+
+    private static Family family(String name, String type, String help) {
+        return FAMILIES.computeIfAbsent(name, key -> new Family(type, help, new ConcurrentHashMap<>()));
+    }
+}
@@ -0,0 +1,62 @@
+package hexlet.code.metrics;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+public final class PoolMetricsTracker implements IMetricsTracker {
+    public static final MetricsTrackerFactory FACTORY = PoolMetricsTracker::new;
+
+    private final Histogram acquire;
+    private final Histogram usage;
+    private final LongAdder timeouts;
+
+    private PoolMetricsTracker(String poolName, PoolStats poolStats) {
+        String labels = "pool=\"" + poolName + "\"";
+        acquire = Metrics.histogram("db_pool_acquire_seconds", "Time spent waiting for a pool connection", labels);
+        usage = Metrics.histogram("db_pool_usage_seconds", "Time a connection was held before return", labels);
+        timeouts = Metrics.counter("db_pool_timeouts_total", "Connection requests that timed out", labels);
+    }
+
+    public static void bind(HikariDataSource dataSource) {
+        String labels = "pool=\"" + dataSource.getPoolName() + "\"";
+        gauge(dataSource, "db_pool_active_connections", "Connections in use", labels,
+                HikariPoolMXBean::getActiveConnections);
+        gauge(dataSource, "db_pool_idle_connections", "Idle connections", labels,
+                HikariPoolMXBean::getIdleConnections);
+        gauge(dataSource, "db_pool_pending_threads", "Threads waiting for a connection", labels,
+                HikariPoolMXBean::getThreadsAwaitingConnection);
+        gauge(dataSource, "db_pool_total_connections", "Open connections", labels,
+                HikariPoolMXBean::getTotalConnections);
+        Metrics.gauge("db_pool_max_connections", "Configured pool size", labels,
+                dataSource::getMaximumPoolSize);
+    }
+
+    private static void gauge(HikariDataSource dataSource, String name, String help, String labels,
+                              ToIntFunction<HikariPoolMXBean> reader) {
+        Metrics.gauge(name, help, labels, () -> {
+            var pool = dataSource.getHikariPoolMXBean();
+            return pool == null || dataSource.isClosed() ? 0 : reader.applyAsInt(pool);
+        });
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquire.observeNanos(elapsedAcquiredNanos);
+    }
+
+    @Override
+    public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+        usage.observeNanos(elapsedBorrowedMillis * 1_000_000L);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        timeouts.increment();
+    }
+}
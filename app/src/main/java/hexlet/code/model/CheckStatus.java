@@ -0,0 +1,21 @@
+package hexlet.code.model;
+
+import lombok.Getter;
+
+@Getter
+public enum CheckStatus {
+    QUEUED("В очереди"),
+    RUNNING("Выполняется"),
+    DONE("Завершена"),
+    FAILED("Ошибка");
+
+    private final String label;
+
+    CheckStatus(String label) {
+        this.label = label;
+    }
+
+    public boolean isFinished() {
+        return this == DONE || this == FAILED;
+    }
+}
@@ -0,0 +1,103 @@
+package hexlet.code.model;
+
+// A mergeable histogram of response times in milliseconds. Times below 16 ms are counted exactly,
+// longer ones in eight buckets per power of two, so a percentile is off by at most 1/16 of its value.
+// Sketches of different hours or days add up bucket by bucket, which is what keeps a percentile over
+// any range of them as cheap as reading the rows.
+public final class LatencySketch {
+    private static final int EXACT = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int FIRST_OCTAVE = 4;
+    static final int BUCKETS = EXACT + (Integer.SIZE - 1 - FIRST_OCTAVE) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+
+    public void add(int millis) {
+        counts[indexOf(Math.max(millis, 0))]++;
+        count++;
+    }
+
+    public void merge(LatencySketch other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // The middle of the bucket holding the value at quantile q, or null for an empty sketch
+    public Integer percentile(double q) {
+        if (count == 0) {
+            return null;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return (int) ((lowerBound(i) + upperBound(i)) / 2);
+            }
+        }
+        return (int) upperBound(BUCKETS - 1);
+    }
+
+    // Only non-empty buckets are written, as "index:count" pairs separated by commas
+    public String encode() {
+        var result = new StringBuilder();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0) {
+                if (!result.isEmpty()) {
+                    result.append(',');
+                }
+                result.append(i).append(':').append(counts[i]);
+            }
+        }
+        return result.toString();
+    }
+
+    public static LatencySketch decode(String encoded) {
+        var sketch = new LatencySketch();
+        if (encoded == null || encoded.isEmpty()) {
+            return sketch;
+        }
+        for (String pair : encoded.split(",")) {
+            int colon = pair.indexOf(':');
+            int index = Integer.parseInt(pair, 0, colon, 10);
+            long bucketCount = Long.parseLong(pair, colon + 1, pair.length(), 10);
+            sketch.counts[index] += bucketCount;
+            sketch.count += bucketCount;
+        }
+        return sketch;
+    }
+
+    static int indexOf(int millis) {
+        if (millis < EXACT) {
+            return millis;
+        }
+        int octave = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(millis);
+        int subBucket = (millis >>> (octave - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT + (octave - FIRST_OCTAVE) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowerBound(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int octave = (index - EXACT) / SUB_BUCKETS + FIRST_OCTAVE;
+        int subBucket = (index - EXACT) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (octave - SUB_BUCKET_BITS);
+    }
+
+    static long upperBound(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int octave = (index - EXACT) / SUB_BUCKETS + FIRST_OCTAVE;
+        return lowerBound(index) + (1L << (octave - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -1,11 +1,70 @@
 package hexlet.code.model;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
 public class NamedRoutes {
     public static String urlsPath() {
         return "/urls";
     }
 
+    public static String urlsPath(String term, Long after) {
+        var query = new StringBuilder();
+        if (term != null && !term.isBlank()) {
+            query.append("term=").append(URLEncoder.encode(term, StandardCharsets.UTF_8));
+        }
+        if (after != null) {
+            query.append(query.isEmpty() ? "" : "&").append("after=").append(after);
+        }
+        return query.isEmpty() ? urlsPath() : urlsPath() + "?" + query;
+    }
+
+    public static String urlsSearchPath(String term, int offset) {
+        var query = "term=" + URLEncoder.encode(term, StandardCharsets.UTF_8);
+        return urlsPath() + "?" + query + (offset > 0 ? "&offset=" + offset : "");
+    }
+
+    public static String urlsAllPath(String term) {
+        var query = "all=true";
+        if (term != null && !term.isBlank()) {
+            query += "&term=" + URLEncoder.encode(term, StandardCharsets.UTF_8);
+        }
+        return urlsPath() + "?" + query;
+    }
+
+    public static String urlsChecksPath() {
+        return "/urls/checks";
+    }
+
+    public static String metricsPath() {
+        return "/metrics";
+    }
+
+    public static String apiUrlsPath() {
+        return "/api/urls";
+    }
+
+    public static String apiUrlsImportPath() {
+        return apiUrlsPath() + "/import";
+    }
+
+    public static String apiUrlPath(String id) {
+        return apiUrlsPath() + "/" + id;
+    }
+
+    public static String apiUrlChecksPath(String id) {
+        return apiUrlPath(id) + "/checks";
+    }
+
+    public static String apiUrlLatencyPath(String id) {
+        return apiUrlPath(id) + "/latency";
+    }
+
     public static String urlPath(String id) {
         return "/urls/" + id;
     }
+
+    public static String urlPath(String id, Long before) {
+        return before == null ? urlPath(id) : urlPath(id) + "?before=" + before;
+    }
 }
@@ -13,6 +13,7 @@ public final class Url {
     private Long id;
     private String name;
     private LocalDateTime createdAt;
+    private UrlCheck latestCheck;
 
     public Url(String name) {
         this.name = name;
@@ -17,6 +17,22 @@ public final class UrlCheck {
     private String h1;
     private String description;
     private LocalDateTime createdAt;
+    private CheckStatus status = CheckStatus.DONE;
+    private String etag;
+    private String lastModified;
+    private String bodyHash;
+    private boolean unchanged;
+    private String error;
+    private Integer dnsMillis;
+    private Integer connectMillis;
+    private Integer ttfbMillis;
+    private Integer totalMillis;
+    private Long transferBytes;
+    private Long contentBytes;
+    private Integer redirects;
+    private String finalUrl;
+    // Refused by HostGuard, so the page was never fetched; only kept in memory
+    private boolean rejected;
 
     public UrlCheck(Long urlId, Integer statusCode, String title, String h1, String description,
                     LocalDateTime createdAt) {
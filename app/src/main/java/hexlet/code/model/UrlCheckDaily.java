@@ -0,0 +1,53 @@
+package hexlet.code.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+@Getter
+@Setter
+@ToString
+public final class UrlCheckDaily {
+    private Long urlId;
+    private LocalDate day;
+    private int checks;
+    private int failed;
+    private int status2xx;
+    private int status3xx;
+    private int status4xx;
+    private int status5xx;
+    private int titleChanges;
+    private String lastTitle;
+
+    public UrlCheckDaily(Long urlId, LocalDate day) {
+        this.urlId = urlId;
+        this.day = day;
+    }
+
+    public void add(UrlCheck check) {
+        checks++;
+        if (check.getStatus() != CheckStatus.DONE || check.getStatusCode() == null) {
+            failed++;
+            return;
+        }
+        int statusClass = check.getStatusCode() / 100;
+        if (statusClass == 2) {
+            status2xx++;
+        } else if (statusClass == 3) {
+            status3xx++;
+        } else if (statusClass == 4) {
+            status4xx++;
+        } else if (statusClass == 5) {
+            status5xx++;
+        }
+        if (check.getTitle() != null) {
+            if (lastTitle != null && !Objects.equals(lastTitle, check.getTitle())) {
+                titleChanges++;
+            }
+            lastTitle = check.getTitle();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package hexlet.code.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+// Response times of the timed checks of a url that started within one hour or one day
+@Getter
+@Setter
+@ToString
+public final class UrlLatency {
+    private Long urlId;
+    private Period period;
+    private LocalDateTime periodStart;
+    private long checks;
+    private long totalMillis;
+    private int maxMillis;
+    private LatencySketch sketch = new LatencySketch();
+
+    @Getter
+    public enum Period {
+        HOUR(ChronoUnit.HOURS),
+        DAY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Period(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        public LocalDateTime startOf(LocalDateTime time) {
+            return time.truncatedTo(unit);
+        }
+    }
+
+    public UrlLatency(Long urlId, Period period, LocalDateTime periodStart) {
+        this.urlId = urlId;
+        this.period = period;
+        this.periodStart = periodStart;
+    }
+
+    public void add(int millis) {
+        checks++;
+        totalMillis += millis;
+        maxMillis = Math.max(maxMillis, millis);
+        sketch.add(millis);
+    }
+
+    public void merge(UrlLatency other) {
+        checks += other.checks;
+        totalMillis += other.totalMillis;
+        maxMillis = Math.max(maxMillis, other.maxMillis);
+        sketch.merge(other.sketch);
+    }
+
+    public Integer getMeanMillis() {
+        return checks == 0 ? null : (int) (totalMillis / checks);
+    }
+
+    // Never above the slowest check, which the middle of its bucket may be
+    public Integer percentile(double q) {
+        var value = sketch.percentile(q);
+        return value == null ? null : Math.min(value, maxMillis);
+    }
+
+    public Integer getP50() {
+        return percentile(0.5);
+    }
+
+    public Integer getP95() {
+        return percentile(0.95);
+    }
+
+    public Integer getP99() {
+        return percentile(0.99);
+    }
+}
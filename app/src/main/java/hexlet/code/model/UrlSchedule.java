@@ -0,0 +1,28 @@
+package hexlet.code.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+// When a url is checked next by the monitor and what its last monitored check looked like.
+// lastFailed is null until the first monitored check completes.
+@Getter
+@Setter
+@ToString
+public final class UrlSchedule {
+    private Long urlId;
+    private String urlName;
+    private LocalDateTime nextCheckAt;
+    private int intervalSeconds;
+    private int stableChecks;
+    private Integer lastStatusCode;
+    private Boolean lastFailed;
+
+    public UrlSchedule(Long urlId, LocalDateTime nextCheckAt, int intervalSeconds) {
+        this.urlId = urlId;
+        this.nextCheckAt = nextCheckAt;
+        this.intervalSeconds = intervalSeconds;
+    }
+}
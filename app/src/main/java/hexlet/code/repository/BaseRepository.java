@@ -1,7 +1,56 @@
 package hexlet.code.repository;
 
 import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.metrics.Histogram;
+import hexlet.code.metrics.Metrics;
+
+import java.sql.SQLException;
+import java.util.Collections;
 
 public class BaseRepository {
     public static HikariDataSource dataSource;
+
+    protected static final String UNIQUE_VIOLATION = "23505";
+    // A time leaseSeconds past the database clock, so leases do not depend on each node's own clock
+    protected static final String LEASE_UNTIL = "LOCALTIMESTAMP + CAST(? AS INTEGER) * INTERVAL '1' SECOND";
+
+    @FunctionalInterface
+    protected interface SqlCallable<T> {
+        T call() throws SQLException;
+    }
+
+    @FunctionalInterface
+    protected interface SqlRunnable {
+        void run() throws SQLException;
+    }
+
+    protected static boolean isPostgres() {
+        return dataSource.getJdbcUrl().startsWith("jdbc:postgresql:");
+    }
+
+    protected static Histogram queryTimer(String repository, String method) {
+        return Metrics.histogram("db_query_seconds", "Repository method latency",
+                "repository=\"" + repository + "\",method=\"" + method + "\"");
+    }
+
+    protected static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    // Runs body and records its duration in timer, whether it returns or throws
+    protected static <T> T timed(Histogram timer, SqlCallable<T> body) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return body.call();
+        } finally {
+            timer.observeNanos(System.nanoTime() - start);
+        }
+    }
+
+    protected static void timed(Histogram timer, SqlRunnable body) throws SQLException {
+        timed(timer, () -> {
+            body.run();
+            return null;
+        });
+    }
 }
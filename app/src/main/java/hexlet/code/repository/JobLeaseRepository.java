@@ -0,0 +1,29 @@
+package hexlet.code.repository;
+
+import hexlet.code.metrics.Histogram;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+// One row per cluster-wide job. A node runs the job only while it holds the row's lease; lease times come from
+// the database clock so nodes with drifting clocks still agree on when a lease has run out.
+public class JobLeaseRepository extends BaseRepository {
+    private static final Histogram TRY_ACQUIRE_TIMER = queryTimer("job_lease", "tryAcquire");
+
+    // Takes the lease on job for node, or renews it if node already holds it, until leaseSeconds from now.
+    // False while another node holds an unexpired lease.
+    public static boolean tryAcquire(String job, String node, int leaseSeconds) throws SQLException {
+        return timed(TRY_ACQUIRE_TIMER, () -> {
+            String sql = "UPDATE job_leases SET node = ?, lease_until = " + LEASE_UNTIL
+                    + " WHERE name = ? AND (node = ? OR lease_until <= LOCALTIMESTAMP)";
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, node);
+                stmt.setInt(2, leaseSeconds);
+                stmt.setString(3, job);
+                stmt.setString(4, node);
+                return stmt.executeUpdate() == 1;
+            }
+        });
+    }
+}
@@ -0,0 +1,197 @@
+package hexlet.code.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class Migrations {
+    private static final Logger LOG = LoggerFactory.getLogger(Migrations.class);
+    // "migr" in ASCII; any fixed key works as long as nothing else in the database takes the same one
+    private static final long LOCK_KEY = 0x6d696772L;
+
+    // Applied in order and never edited once released; a schema change is a new file at the end.
+    // A file in a directory named after a database, like "postgresql/", is applied on that database only.
+    private static final List<String> MIGRATIONS = List.of(
+            "V1__create_tables.sql",
+            "V2__add_check_history_index.sql",
+            "V3__create_url_check_daily.sql",
+            "V4__add_check_error.sql",
+            "postgresql/V5__create_url_search.sql",
+            "V6__create_url_schedule.sql",
+            "V7__add_schedule_leases.sql",
+            "V8__add_check_timings.sql",
+            "V9__create_url_latency.sql",
+            "V10__add_check_status_index.sql",
+            "V11__create_job_leases.sql",
+            "V12__add_batch_check_lease.sql"
+    );
+
+    private static final Map<String, List<String>> REQUIRED_INDEXES = Map.of(
+            "urls", List.of("name"),
+            "url_checks", List.of("url_id", "created_at")
+    );
+
+    private Migrations() {
+    }
+
+    // Nodes starting together take turns: the first applies what is missing, the rest find it applied.
+    // Postgres serializes them with an advisory lock; H2 only runs embedded, so the JVM monitor is enough.
+    public static synchronized void migrate(DataSource dataSource) throws SQLException {
+        try (var conn = dataSource.getConnection()) {
+            String database = databaseOf(conn);
+            lock(conn, database);
+            try {
+                try (var stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE IF NOT EXISTS schema_migrations (version INTEGER PRIMARY KEY,"
+                            + " name VARCHAR(255) NOT NULL, applied_at TIMESTAMP NOT NULL)");
+                }
+                Set<Integer> applied = appliedVersions(conn);
+                for (String name : MIGRATIONS) {
+                    int version = versionOf(name);
+                    if (!applied.contains(version) && appliesTo(name, database)) {
+                        apply(conn, version, name);
+                    }
+                }
+            } finally {
+                unlock(conn, database);
+            }
+        }
+        for (String index : findMissingIndexes(dataSource)) {
+            LOG.warn("Missing index on {}, lookups on it will scan the whole table", index);
+        }
+    }
+
+    // The migrations that apply to the database behind dataSource, whether or not they have run yet
+    public static List<String> available(DataSource dataSource) throws SQLException {
+        String database;
+        try (var conn = dataSource.getConnection()) {
+            database = databaseOf(conn);
+        }
+        return MIGRATIONS.stream().filter(name -> appliesTo(name, database)).toList();
+    }
+
+    public static List<String> findMissingIndexes(DataSource dataSource) throws SQLException {
+        List<String> missing = new ArrayList<>();
+        try (var conn = dataSource.getConnection()) {
+            var meta = conn.getMetaData();
+            for (var required : REQUIRED_INDEXES.entrySet()) {
+                if (!hasIndexStartingWith(meta, required.getKey(), required.getValue())) {
+                    missing.add(required.getKey() + "(" + String.join(", ", required.getValue()) + ")");
+                }
+            }
+        }
+        return missing;
+    }
+
+    private static String databaseOf(Connection conn) throws SQLException {
+        return conn.getMetaData().getDatabaseProductName().toLowerCase();
+    }
+
+    private static void lock(Connection conn, String database) throws SQLException {
+        if (database.equals("postgresql")) {
+            try (var stmt = conn.prepareStatement("SELECT pg_advisory_lock(?)")) {
+                stmt.setLong(1, LOCK_KEY);
+                stmt.execute();
+            }
+        }
+    }
+
+    private static void unlock(Connection conn, String database) throws SQLException {
+        if (database.equals("postgresql")) {
+            try (var stmt = conn.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                stmt.setLong(1, LOCK_KEY);
+                stmt.execute();
+            }
+        }
+    }
+
+    private static Set<Integer> appliedVersions(Connection conn) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (var stmt = conn.createStatement();
+             var rs = stmt.executeQuery("SELECT version FROM schema_migrations")) {
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+    private static void apply(Connection conn, int version, String name) throws SQLException {
+        LOG.info("Applying migration {}", name);
+        conn.setAutoCommit(false);
+        try (var stmt = conn.createStatement();
+             var record = conn.prepareStatement(
+                     "INSERT INTO schema_migrations (version, name, applied_at) VALUES (?, ?, ?)")) {
+            stmt.execute(read(name));
+            record.setInt(1, version);
+            record.setString(2, name);
+            record.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
+            record.executeUpdate();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static boolean hasIndexStartingWith(DatabaseMetaData meta, String table, List<String> columns)
+            throws SQLException {
+        String tableName = meta.storesUpperCaseIdentifiers() ? table.toUpperCase() : table;
+        Map<String, List<String>> indexColumns = new HashMap<>();
+        try (var rs = meta.getIndexInfo(null, null, tableName, false, false)) {
+            while (rs.next()) {
+                String index = rs.getString("INDEX_NAME");
+                String column = rs.getString("COLUMN_NAME");
+                if (index == null || column == null) {
+                    continue;
+                }
+                var list = indexColumns.computeIfAbsent(index, key -> new ArrayList<>());
+                int position = rs.getShort("ORDINAL_POSITION");
+                while (list.size() < position) {
+                    list.add(null);
+                }
+                list.set(position - 1, column.toLowerCase());
+            }
+        }
+        return indexColumns.values().stream()
+                .anyMatch(list -> list.size() >= columns.size() && list.subList(0, columns.size()).equals(columns));
+    }
+
+    private static boolean appliesTo(String name, String database) {
+        int slash = name.indexOf('/');
+        return slash == -1 || name.substring(0, slash).equals(database);
+    }
+
+    private static int versionOf(String name) {
+        return Integer.parseInt(name.substring(name.indexOf('/') + 2, name.indexOf("__")));
+    }
+
+    private static String read(String name) {
+        try (InputStream in = Migrations.class.getClassLoader().getResourceAsStream("db/migration/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Migration " + name + " is not on the classpath");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package hexlet.code.repository;
+
+import hexlet.code.metrics.Metrics;
+import hexlet.code.util.Env;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+// Read-through LRU cache with a TTL in front of hot single-row lookups. Writes invalidate only the caches
+// of the node that made them, so with several instances on one database another node may serve the old
+// row for up to CACHE_TTL_SECONDS; CACHE_ENABLED=false turns caching off where that is not acceptable.
+public final class QueryCache<K, V> {
+    public static final boolean ENABLED = Env.getBoolean("CACHE_ENABLED", true);
+
+    private static final int DEFAULT_MAX_ENTRIES = Env.getInt("CACHE_MAX_ENTRIES", 10_000);
+    private static final Duration DEFAULT_TTL = Duration.ofSeconds(Env.getLong("CACHE_TTL_SECONDS", 60));
+    private static final List<QueryCache<?, ?>> CACHES = new CopyOnWriteArrayList<>();
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<K, Entry<V>> entries;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    // Bumped on every invalidation so a load that raced with a write does not store the stale row
+    private long generation;
+
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws SQLException;
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    public QueryCache(String name, int maxEntries, Duration ttl) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        String labels = "cache=\"" + name + "\"";
+        this.hits = Metrics.counter("cache_hits_total", "Lookups served from the query cache", labels);
+        this.misses = Metrics.counter("cache_misses_total", "Lookups that went to the database", labels);
+        CACHES.add(this);
+    }
+
+    public QueryCache(String name) {
+        this(name, DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    }
+
+    public static void invalidateEverything() {
+        CACHES.forEach(QueryCache::invalidateAll);
+    }
+
+    public V get(K key, Loader<V> loader) throws SQLException {
+        if (!ENABLED) {
+            return loader.load();
+        }
+        long loadGeneration;
+        synchronized (this) {
+            var entry = entries.get(key);
+            if (entry != null && entry.expiresAt() - System.nanoTime() > 0) {
+                hits.increment();
+                return entry.value();
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        V value = loader.load();
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+                evictEldest();
+            }
+        }
+        return value;
+    }
+
+    public synchronized void invalidate(K key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evictEldest() {
+        var iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
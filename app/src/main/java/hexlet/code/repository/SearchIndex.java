@@ -0,0 +1,166 @@
+package hexlet.code.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+// In-process trigram index over url names and the text of their latest completed check.
+// Used where the database has no trigram index of its own; UrlSearchRepository keeps it in sync.
+// Holds at most capacity urls, the newest by id, so the heap it takes stays bounded.
+final class SearchIndex {
+    private static final int GRAM = 3;
+    private static final int NAME_WEIGHT = 2;
+    private static final int TEXT_WEIGHT = 1;
+
+    private final Map<String, Set<Long>> postings = new HashMap<>();
+    private final TreeMap<Long, Document> documents = new TreeMap<>();
+    private final int capacity;
+    private final Set<Long> stale = new HashSet<>();
+    private boolean loaded;
+    private long maxUrlId;
+
+    record Document(String name, String text) {
+    }
+
+    record Hit(long urlId, int score) {
+    }
+
+    SearchIndex(int capacity) {
+        this.capacity = capacity;
+    }
+
+    synchronized long getMaxUrlId() {
+        return maxUrlId;
+    }
+
+    synchronized void markStale(Long urlId) {
+        if (loaded) {
+            stale.add(urlId);
+        }
+    }
+
+    synchronized List<Long> takeStale() {
+        List<Long> ids = new ArrayList<>(stale);
+        stale.clear();
+        return ids;
+    }
+
+    synchronized void put(long urlId, String name, String text) {
+        remove(urlId);
+        maxUrlId = Math.max(maxUrlId, urlId);
+        if (documents.size() >= capacity) {
+            if (urlId < documents.firstKey()) {
+                return;
+            }
+            remove(documents.firstKey());
+        }
+        var document = new Document(name.toLowerCase(), text == null ? "" : text.toLowerCase());
+        documents.put(urlId, document);
+        for (String gram : grams(document.name() + "\n" + document.text())) {
+            postings.computeIfAbsent(gram, key -> new HashSet<>()).add(urlId);
+        }
+    }
+
+    synchronized void markLoaded() {
+        loaded = true;
+    }
+
+    synchronized void clear() {
+        postings.clear();
+        documents.clear();
+        stale.clear();
+        loaded = false;
+        maxUrlId = 0;
+    }
+
+    // Ranked by where the term occurs, name before page text, then by id; returns hits offset..offset+limit
+    synchronized List<Hit> search(String term, int offset, int limit) {
+        var ranked = top(term, null, offset + limit);
+        return offset >= ranked.size() ? List.of() : ranked.subList(offset, ranked.size());
+    }
+
+    // The limit hits ranked right after the given one
+    synchronized List<Hit> searchAfter(String term, Hit after, int limit) {
+        return top(term, after, limit);
+    }
+
+    private List<Hit> top(String term, Hit after, int keep) {
+        String needle = term.toLowerCase();
+        var worstFirst = Comparator.comparingInt(Hit::score).thenComparing(Hit::urlId, Comparator.reverseOrder());
+        var top = new PriorityQueue<>(worstFirst);
+        for (long urlId : candidates(needle)) {
+            var document = documents.get(urlId);
+            int score = (document.name().contains(needle) ? NAME_WEIGHT : 0)
+                    + (document.text().contains(needle) ? TEXT_WEIGHT : 0);
+            var hit = new Hit(urlId, score);
+            if (score == 0 || (after != null && worstFirst.compare(hit, after) >= 0)) {
+                continue;
+            }
+            top.add(hit);
+            if (top.size() > keep) {
+                top.poll();
+            }
+        }
+        List<Hit> ranked = new ArrayList<>(top);
+        ranked.sort(worstFirst.reversed());
+        return ranked;
+    }
+
+    // Ids holding every trigram of the term, smallest posting list first; all ids for terms shorter than a trigram
+    private Iterable<Long> candidates(String needle) {
+        Set<String> grams = grams(needle);
+        if (grams.isEmpty()) {
+            return documents.keySet();
+        }
+        List<Set<Long>> lists = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            var ids = postings.get(gram);
+            if (ids == null) {
+                return List.of();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        List<Long> matches = new ArrayList<>();
+        for (long urlId : lists.get(0)) {
+            boolean inAll = true;
+            for (int i = 1; i < lists.size() && inAll; i++) {
+                inAll = lists.get(i).contains(urlId);
+            }
+            if (inAll) {
+                matches.add(urlId);
+            }
+        }
+        return matches;
+    }
+
+    private void remove(long urlId) {
+        var previous = documents.remove(urlId);
+        if (previous == null) {
+            return;
+        }
+        for (String gram : grams(previous.name() + "\n" + previous.text())) {
+            var ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(urlId);
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
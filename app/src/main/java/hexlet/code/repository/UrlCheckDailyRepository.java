@@ -0,0 +1,172 @@
+package hexlet.code.repository;
+
+import hexlet.code.metrics.Histogram;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlCheckDaily;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class UrlCheckDailyRepository extends BaseRepository {
+    private static final Histogram ROLL_UP_TIMER = queryTimer("url_check_daily", "rollUp");
+    private static final Histogram FIND_BY_URL_ID_TIMER = queryTimer("url_check_daily", "findByUrlId");
+
+    private record Key(Long urlId, LocalDate day) {
+    }
+
+    // Rolls up to limit expired checks into daily rows and deletes them in one short transaction.
+    // The newest completed check of a url is never expired, so conditional requests keep their validators.
+    public static int rollUp(LocalDateTime cutoff, int limit) throws SQLException {
+        return timed(ROLL_UP_TIMER, () -> {
+            try (var conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    List<UrlCheck> expired = selectExpired(conn, cutoff, limit);
+                    Map<Key, UrlCheckDaily> rollups = new LinkedHashMap<>();
+                    Set<Key> stored = new HashSet<>();
+                    for (UrlCheck check : expired) {
+                        var key = new Key(check.getUrlId(), check.getCreatedAt().toLocalDate());
+                        var rollup = rollups.get(key);
+                        if (rollup == null) {
+                            rollup = load(conn, key, stored);
+                            rollups.put(key, rollup);
+                        }
+                        rollup.add(check);
+                    }
+                    for (var entry : rollups.entrySet()) {
+                        save(conn, entry.getValue(), stored.contains(entry.getKey()));
+                    }
+                    delete(conn, expired);
+                    conn.commit();
+                    return expired.size();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+        });
+    }
+
+    public static List<UrlCheckDaily> findByUrlId(Long urlId) throws SQLException {
+        return timed(FIND_BY_URL_ID_TIMER, () -> {
+            String sql = "SELECT * FROM url_check_daily WHERE url_id = ? ORDER BY check_date DESC";
+            List<UrlCheckDaily> result = new ArrayList<>();
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, urlId);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    result.add(map(rs));
+                }
+            }
+            return result;
+        });
+    }
+
+    private static List<UrlCheck> selectExpired(Connection conn, LocalDateTime cutoff, int limit)
+            throws SQLException {
+        // Everything before the cutoff except the newest DONE check of each url, which keeps its latest result
+        String sql = "SELECT c.* FROM url_checks c WHERE c.created_at < ?"
+                + " AND (c.status <> ? OR EXISTS (SELECT 1 FROM url_checks n WHERE n.url_id = c.url_id"
+                + " AND n.status = ?"
+                + " AND (n.created_at > c.created_at OR (n.created_at = c.created_at AND n.id > c.id))))"
+                + " ORDER BY c.created_at, c.id LIMIT ?";
+        List<UrlCheck> checks = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(cutoff));
+            stmt.setString(2, CheckStatus.DONE.name());
+            stmt.setString(3, CheckStatus.DONE.name());
+            stmt.setInt(4, limit);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                checks.add(UrlCheckRepository.map(rs));
+            }
+        }
+        return checks;
+    }
+
+    private static UrlCheckDaily load(Connection conn, Key key, Set<Key> stored) throws SQLException {
+        // The closest earlier day seeds lastTitle so a title change across midnight is still counted
+        String sql = "SELECT * FROM url_check_daily WHERE url_id = ? AND check_date <= ?"
+                + " ORDER BY check_date DESC LIMIT 1";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, key.urlId());
+            stmt.setDate(2, Date.valueOf(key.day()));
+            ResultSet rs = stmt.executeQuery();
+            if (!rs.next()) {
+                return new UrlCheckDaily(key.urlId(), key.day());
+            }
+            var previous = map(rs);
+            if (previous.getDay().equals(key.day())) {
+                stored.add(key);
+                return previous;
+            }
+            var rollup = new UrlCheckDaily(key.urlId(), key.day());
+            rollup.setLastTitle(previous.getLastTitle());
+            return rollup;
+        }
+    }
+
+    private static void save(Connection conn, UrlCheckDaily rollup, boolean exists) throws SQLException {
+        String sql = exists
+                ? "UPDATE url_check_daily SET checks = ?, failed = ?, status_2xx = ?, status_3xx = ?,"
+                + " status_4xx = ?, status_5xx = ?, title_changes = ?, last_title = ?"
+                + " WHERE url_id = ? AND check_date = ?"
+                : "INSERT INTO url_check_daily (checks, failed, status_2xx, status_3xx, status_4xx, status_5xx,"
+                + " title_changes, last_title, url_id, check_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, rollup.getChecks());
+            stmt.setInt(2, rollup.getFailed());
+            stmt.setInt(3, rollup.getStatus2xx());
+            stmt.setInt(4, rollup.getStatus3xx());
+            stmt.setInt(5, rollup.getStatus4xx());
+            stmt.setInt(6, rollup.getStatus5xx());
+            stmt.setInt(7, rollup.getTitleChanges());
+            stmt.setString(8, rollup.getLastTitle());
+            stmt.setLong(9, rollup.getUrlId());
+            stmt.setDate(10, Date.valueOf(rollup.getDay()));
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void delete(Connection conn, List<UrlCheck> checks) throws SQLException {
+        if (checks.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM url_checks WHERE id = ?")) {
+            for (UrlCheck check : checks) {
+                stmt.setLong(1, check.getId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private static UrlCheckDaily map(ResultSet rs) throws SQLException {
+        var rollup = new UrlCheckDaily(rs.getLong("url_id"), rs.getDate("check_date").toLocalDate());
+        rollup.setChecks(rs.getInt("checks"));
+        rollup.setFailed(rs.getInt("failed"));
+        rollup.setStatus2xx(rs.getInt("status_2xx"));
+        rollup.setStatus3xx(rs.getInt("status_3xx"));
+        rollup.setStatus4xx(rs.getInt("status_4xx"));
+        rollup.setStatus5xx(rs.getInt("status_5xx"));
+        rollup.setTitleChanges(rs.getInt("title_changes"));
+        rollup.setLastTitle(rs.getString("last_title"));
+        return rollup;
+    }
+}
@@ -1,5 +1,7 @@
 package hexlet.code.repository;
 
+import hexlet.code.metrics.Histogram;
+import hexlet.code.model.CheckStatus;
 import hexlet.code.model.UrlCheck;
 
 import java.sql.PreparedStatement;
@@ -7,75 +9,351 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 public class UrlCheckRepository extends BaseRepository {
+    private static final Histogram SAVE_TIMER = queryTimer("url_check", "save");
+    private static final Histogram SAVE_ALL_TIMER = queryTimer("url_check", "saveAll");
+    private static final Histogram UPDATE_TIMER = queryTimer("url_check", "update");
+    private static final Histogram WRITE_ALL_TIMER = queryTimer("url_check", "writeAll");
+    private static final Histogram UPDATE_STATUS_TIMER = queryTimer("url_check", "updateStatus");
+    private static final Histogram FAIL_STALE_TIMER = queryTimer("url_check", "failStale");
+    private static final Histogram FIND_PAGE_BY_URL_ID_TIMER = queryTimer("url_check", "findPageByUrlId");
+    private static final Histogram FIND_LATEST_BY_URL_ID_TIMER = queryTimer("url_check", "findLatestByUrlId");
+    private static final Histogram FIND_LATEST_COMPLETED_BY_URL_ID_TIMER =
+            queryTimer("url_check", "findLatestCompletedByUrlId");
+    private static final QueryCache<Long, Optional<UrlCheck>> LATEST_BY_URL_ID =
+            new QueryCache<>("latest_check_by_url_id");
+    private static final Histogram FIND_TIMINGS_BY_URL_ID_TIMER = queryTimer("url_check", "findTimingsByUrlId");
+    private static final String UPDATE_SQL = "UPDATE url_checks SET status_code = ?, title = ?, h1 = ?,"
+            + " description = ?, status = ?, etag = ?, last_modified = ?, body_hash = ?, unchanged = ?, error = ?,"
+            + " dns_ms = ?, connect_ms = ?, ttfb_ms = ?, total_ms = ?, transfer_bytes = ?, content_bytes = ?,"
+            + " redirects = ?, final_url = ? WHERE id = ?";
+    private static final String INSERT_SQL = "INSERT INTO url_checks (url_id, status_code, title, h1, description,"
+            + " created_at, status, etag, last_modified, body_hash, unchanged, error, dns_ms, connect_ms, ttfb_ms,"
+            + " total_ms, transfer_bytes, content_bytes, redirects, final_url)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     public static void save(UrlCheck urlCheck) throws SQLException {
-        String sql = "INSERT INTO url_checks (url_id, status_code, title, h1, description, created_at)"
-                + " VALUES (?, ?, ?, ?, ?, ?)";
-        try (var conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setLong(1, urlCheck.getUrlId());
-            stmt.setInt(2, urlCheck.getStatusCode());
-            stmt.setString(3, urlCheck.getTitle());
-            stmt.setString(4, urlCheck.getH1());
-            stmt.setString(5, urlCheck.getDescription());
-            stmt.setTimestamp(6, Timestamp.valueOf(LocalDateTime.now()));
-            stmt.executeUpdate();
-            var generatedKeys = stmt.getGeneratedKeys();
-            if (generatedKeys.next()) {
-                urlCheck.setId(generatedKeys.getLong(1));
-            } else {
-                throw new SQLException("DB have not returned an id after saving an entity");
+        timed(SAVE_TIMER, () -> {
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                conn.setAutoCommit(false);
+                try {
+                    bindInsert(stmt, urlCheck, Timestamp.valueOf(LocalDateTime.now()));
+                    stmt.executeUpdate();
+                    var generatedKeys = stmt.getGeneratedKeys();
+                    if (generatedKeys.next()) {
+                        urlCheck.setId(generatedKeys.getLong(1));
+                    } else {
+                        throw new SQLException("DB have not returned an id after saving an entity");
+                    }
+                    UrlLatencyRepository.record(conn, List.of(urlCheck));
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            LATEST_BY_URL_ID.invalidate(urlCheck.getUrlId());
+            UrlSearchRepository.markStale(urlCheck.getUrlId());
+        });
+    }
+
+    public static void saveAll(List<UrlCheck> urlChecks) throws SQLException {
+        timed(SAVE_ALL_TIMER, () -> {
+            if (urlChecks.isEmpty()) {
+                return;
+            }
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                conn.setAutoCommit(false);
+                try {
+                    var now = Timestamp.valueOf(LocalDateTime.now());
+                    for (UrlCheck urlCheck : urlChecks) {
+                        bindInsert(stmt, urlCheck, now);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    UrlLatencyRepository.record(conn, urlChecks);
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
             }
-        }
+            for (UrlCheck urlCheck : urlChecks) {
+                LATEST_BY_URL_ID.invalidate(urlCheck.getUrlId());
+                UrlSearchRepository.markStale(urlCheck.getUrlId());
+            }
+        });
     }
 
-    public static List<UrlCheck> findByUrlId(Long urlId) throws SQLException {
-        String sql = "SELECT * FROM url_checks WHERE url_id = ? ORDER BY created_at DESC";
-        List<UrlCheck> urlChecks = new ArrayList<>();
-        try (var conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, urlId);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                UrlCheck check = new UrlCheck(
-                        rs.getLong("url_id"),
-                        rs.getInt("status_code"),
-                        rs.getString("title"),
-                        rs.getString("h1"),
-                        rs.getString("description"),
-                        rs.getTimestamp("created_at").toLocalDateTime()
-                );
-                check.setId(rs.getLong("id"));
-                urlChecks.add(check);
+    public static void update(UrlCheck urlCheck) throws SQLException {
+        timed(UPDATE_TIMER, () -> {
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
+                conn.setAutoCommit(false);
+                try {
+                    bindUpdate(stmt, urlCheck);
+                    stmt.executeUpdate();
+                    UrlLatencyRepository.record(conn, List.of(urlCheck));
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
             }
-        }
-        return urlChecks;
+            LATEST_BY_URL_ID.invalidate(urlCheck.getUrlId());
+            UrlSearchRepository.markStale(urlCheck.getUrlId());
+        });
+    }
+
+    // Inserts the checks that have no id yet and updates the others, all in one transaction
+    public static void writeAll(List<UrlCheck> urlChecks) throws SQLException {
+        timed(WRITE_ALL_TIMER, () -> {
+            if (urlChecks.isEmpty()) {
+                return;
+            }
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement insert = conn.prepareStatement(INSERT_SQL);
+                 PreparedStatement update = conn.prepareStatement(UPDATE_SQL)) {
+                conn.setAutoCommit(false);
+                try {
+                    var now = Timestamp.valueOf(LocalDateTime.now());
+                    boolean inserts = false;
+                    boolean updates = false;
+                    for (UrlCheck urlCheck : urlChecks) {
+                        if (urlCheck.getId() == null) {
+                            bindInsert(insert, urlCheck, now);
+                            insert.addBatch();
+                            inserts = true;
+                        } else {
+                            bindUpdate(update, urlCheck);
+                            update.addBatch();
+                            updates = true;
+                        }
+                    }
+                    if (inserts) {
+                        insert.executeBatch();
+                    }
+                    if (updates) {
+                        update.executeBatch();
+                    }
+                    UrlLatencyRepository.record(conn, urlChecks);
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            for (UrlCheck urlCheck : urlChecks) {
+                LATEST_BY_URL_ID.invalidate(urlCheck.getUrlId());
+                UrlSearchRepository.markStale(urlCheck.getUrlId());
+            }
+        });
+    }
+
+    public static void updateStatus(UrlCheck urlCheck, CheckStatus status) throws SQLException {
+        timed(UPDATE_STATUS_TIMER, () -> {
+            String sql = "UPDATE url_checks SET status = ? WHERE id = ?";
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, status.name());
+                stmt.setLong(2, urlCheck.getId());
+                stmt.executeUpdate();
+            }
+            urlCheck.setStatus(status);
+            LATEST_BY_URL_ID.invalidate(urlCheck.getUrlId());
+            UrlSearchRepository.markStale(urlCheck.getUrlId());
+        });
+    }
+
+    // Fails the checks still QUEUED or RUNNING that were created before cutoff and returns how many
+    public static int failStale(LocalDateTime cutoff, String error) throws SQLException {
+        return timed(FAIL_STALE_TIMER, () -> {
+            String sql = "UPDATE url_checks SET status = ?, error = ? WHERE status IN (?, ?) AND created_at < ?";
+            int failed;
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, CheckStatus.FAILED.name());
+                stmt.setString(2, error);
+                stmt.setString(3, CheckStatus.QUEUED.name());
+                stmt.setString(4, CheckStatus.RUNNING.name());
+                stmt.setTimestamp(5, Timestamp.valueOf(cutoff));
+                failed = stmt.executeUpdate();
+            }
+            if (failed > 0) {
+                LATEST_BY_URL_ID.invalidateAll();
+            }
+            return failed;
+        });
+    }
+
+    // Newest first; beforeId is the id of the last check on the previous page
+    public static List<UrlCheck> findPageByUrlId(Long urlId, Long beforeId, int limit) throws SQLException {
+        return timed(FIND_PAGE_BY_URL_ID_TIMER, () -> {
+            String sql = beforeId == null
+                    ? "SELECT * FROM url_checks WHERE url_id = ? ORDER BY created_at DESC, id DESC LIMIT ?"
+                    : "SELECT c.* FROM url_checks c"
+                    + " JOIN url_checks k ON k.id = ? AND k.url_id = c.url_id"
+                    + " WHERE c.url_id = ?"
+                    + " AND (c.created_at < k.created_at OR (c.created_at = k.created_at AND c.id < k.id))"
+                    + " ORDER BY c.created_at DESC, c.id DESC LIMIT ?";
+            List<UrlCheck> urlChecks = new ArrayList<>(limit);
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                int index = 1;
+                if (beforeId != null) {
+                    stmt.setLong(index++, beforeId);
+                }
+                stmt.setLong(index++, urlId);
+                stmt.setInt(index, limit);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    urlChecks.add(map(rs));
+                }
+            }
+            return urlChecks;
+        });
+    }
+
+    // The newest limit checks that were timed, oldest first, for drawing trends
+    public static List<UrlCheck> findTimingsByUrlId(Long urlId, int limit) throws SQLException {
+        return timed(FIND_TIMINGS_BY_URL_ID_TIMER, () -> {
+            String sql = "SELECT * FROM url_checks WHERE url_id = ? AND total_ms IS NOT NULL"
+                    + " ORDER BY created_at DESC, id DESC LIMIT ?";
+            List<UrlCheck> urlChecks = new ArrayList<>(limit);
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, urlId);
+                stmt.setInt(2, limit);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    urlChecks.add(map(rs));
+                }
+            }
+            Collections.reverse(urlChecks);
+            return urlChecks;
+        });
     }
 
     public static Optional<UrlCheck> findLatestByUrlId(Long urlId) throws SQLException {
-        String sql = "SELECT * FROM url_checks WHERE url_id = ? ORDER BY created_at DESC LIMIT 1";
-        try (var conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, urlId);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                UrlCheck check = new UrlCheck(
-                        rs.getLong("url_id"),
-                        rs.getInt("status_code"),
-                        rs.getString("title"),
-                        rs.getString("h1"),
-                        rs.getString("description"),
-                        rs.getTimestamp("created_at").toLocalDateTime()
-                );
-                check.setId(rs.getLong("id"));
-                return Optional.of(check);
+        return LATEST_BY_URL_ID.get(urlId, () -> selectLatestByUrlId(urlId));
+    }
+
+    private static Optional<UrlCheck> selectLatestByUrlId(Long urlId) throws SQLException {
+        return timed(FIND_LATEST_BY_URL_ID_TIMER, () -> {
+            String sql = "SELECT * FROM url_checks WHERE url_id = ? ORDER BY created_at DESC, id DESC LIMIT 1";
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, urlId);
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next()) {
+                    return Optional.of(map(rs));
+                }
+            }
+            return Optional.empty();
+        });
+    }
+
+    public static Optional<UrlCheck> findLatestCompletedByUrlId(Long urlId) throws SQLException {
+        return timed(FIND_LATEST_COMPLETED_BY_URL_ID_TIMER, () -> {
+            String sql = "SELECT * FROM url_checks WHERE url_id = ? AND status = ?"
+                    + " ORDER BY created_at DESC, id DESC LIMIT 1";
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, urlId);
+                stmt.setString(2, CheckStatus.DONE.name());
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next()) {
+                    return Optional.of(map(rs));
+                }
             }
-        }
-        return Optional.empty();
+            return Optional.empty();
+        });
+    }
+
+    private static void bindInsert(PreparedStatement stmt, UrlCheck urlCheck, Timestamp createdAt)
+            throws SQLException {
+        stmt.setLong(1, urlCheck.getUrlId());
+        stmt.setObject(2, urlCheck.getStatusCode(), Types.INTEGER);
+        stmt.setString(3, urlCheck.getTitle());
+        stmt.setString(4, urlCheck.getH1());
+        stmt.setString(5, urlCheck.getDescription());
+        stmt.setTimestamp(6, createdAt);
+        stmt.setString(7, urlCheck.getStatus().name());
+        stmt.setString(8, urlCheck.getEtag());
+        stmt.setString(9, urlCheck.getLastModified());
+        stmt.setString(10, urlCheck.getBodyHash());
+        stmt.setBoolean(11, urlCheck.isUnchanged());
+        stmt.setString(12, urlCheck.getError());
+        bindTimings(stmt, 13, urlCheck);
+    }
+
+    private static void bindUpdate(PreparedStatement stmt, UrlCheck urlCheck) throws SQLException {
+        stmt.setObject(1, urlCheck.getStatusCode(), Types.INTEGER);
+        stmt.setString(2, urlCheck.getTitle());
+        stmt.setString(3, urlCheck.getH1());
+        stmt.setString(4, urlCheck.getDescription());
+        stmt.setString(5, urlCheck.getStatus().name());
+        stmt.setString(6, urlCheck.getEtag());
+        stmt.setString(7, urlCheck.getLastModified());
+        stmt.setString(8, urlCheck.getBodyHash());
+        stmt.setBoolean(9, urlCheck.isUnchanged());
+        stmt.setString(10, urlCheck.getError());
+        bindTimings(stmt, 11, urlCheck);
+        stmt.setLong(19, urlCheck.getId());
+    }
+
+    private static void bindTimings(PreparedStatement stmt, int first, UrlCheck urlCheck) throws SQLException {
+        stmt.setObject(first, urlCheck.getDnsMillis(), Types.INTEGER);
+        stmt.setObject(first + 1, urlCheck.getConnectMillis(), Types.INTEGER);
+        stmt.setObject(first + 2, urlCheck.getTtfbMillis(), Types.INTEGER);
+        stmt.setObject(first + 3, urlCheck.getTotalMillis(), Types.INTEGER);
+        stmt.setObject(first + 4, urlCheck.getTransferBytes(), Types.BIGINT);
+        stmt.setObject(first + 5, urlCheck.getContentBytes(), Types.BIGINT);
+        stmt.setObject(first + 6, urlCheck.getRedirects(), Types.INTEGER);
+        stmt.setString(first + 7, urlCheck.getFinalUrl());
+    }
+
+    static UrlCheck map(ResultSet rs) throws SQLException {
+        UrlCheck check = new UrlCheck(
+                rs.getLong("url_id"),
+                rs.getObject("status_code", Integer.class),
+                rs.getString("title"),
+                rs.getString("h1"),
+                rs.getString("description"),
+                rs.getTimestamp("created_at").toLocalDateTime()
+        );
+        check.setId(rs.getLong("id"));
+        check.setStatus(CheckStatus.valueOf(rs.getString("status")));
+        check.setEtag(rs.getString("etag"));
+        check.setLastModified(rs.getString("last_modified"));
+        check.setBodyHash(rs.getString("body_hash"));
+        check.setUnchanged(rs.getBoolean("unchanged"));
+        check.setError(rs.getString("error"));
+        check.setDnsMillis(rs.getObject("dns_ms", Integer.class));
+        check.setConnectMillis(rs.getObject("connect_ms", Integer.class));
+        check.setTtfbMillis(rs.getObject("ttfb_ms", Integer.class));
+        check.setTotalMillis(rs.getObject("total_ms", Integer.class));
+        check.setTransferBytes(rs.getObject("transfer_bytes", Long.class));
+        check.setContentBytes(rs.getObject("content_bytes", Long.class));
+        check.setRedirects(rs.getObject("redirects", Integer.class));
+        check.setFinalUrl(rs.getString("final_url"));
+        return check;
     }
 }
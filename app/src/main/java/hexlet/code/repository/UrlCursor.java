@@ -0,0 +1,81 @@
+package hexlet.code.repository;
+
+import hexlet.code.model.Url;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public final class UrlCursor implements Iterable<Url>, AutoCloseable {
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final RowMapper mapper;
+    private final long deadline;
+    private final Runnable onClose;
+    private final Iterator<Url> rows = new Iterator<>() {
+        private Url next;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IllegalStateException("Reading the urls took longer than URLS_STREAM_TIMEOUT_SECONDS");
+                }
+                try {
+                    if (resultSet.next()) {
+                        next = mapper.map(resultSet);
+                    }
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Failed to read the next url", e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Url next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            var current = next;
+            next = null;
+            return current;
+        }
+    };
+
+    @FunctionalInterface
+    interface RowMapper {
+        Url map(ResultSet resultSet) throws SQLException;
+    }
+
+    // The query timeout only covers executing the query, so the deadline also ends a listing its client reads
+    // slowly; onClose runs once the connection is given back
+    UrlCursor(Connection connection, PreparedStatement statement, RowMapper mapper, long deadline,
+              Runnable onClose) throws SQLException {
+        this.connection = connection;
+        this.statement = statement;
+        this.resultSet = statement.executeQuery();
+        this.mapper = mapper;
+        this.deadline = deadline;
+        this.onClose = onClose;
+    }
+
+    // Single pass over the result set: every call returns the same iterator, so a row peeked by hasNext() is kept
+    @Override
+    public Iterator<Url> iterator() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (connection; statement; resultSet) {
+            connection.commit();
+        } finally {
+            onClose.run();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package hexlet.code.repository;
+
+import hexlet.code.metrics.Histogram;
+import hexlet.code.model.LatencySketch;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlLatency;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class UrlLatencyRepository extends BaseRepository {
+    private static final Histogram FIND_BY_URL_ID_TIMER = queryTimer("url_latency", "findByUrlId");
+    private static final Histogram DELETE_BEFORE_TIMER = queryTimer("url_latency", "deleteBefore");
+    private static final int LOCK_BATCH_SIZE = 500;
+
+    // The counters add up in SQL, so a row another writer created after ours were locked keeps its checks.
+    // The sketch is replaced when the row was locked and merged in memory, and is otherwise appended to:
+    // decode adds up repeated buckets, and the next write of the row stores it merged again.
+    private static final String UPSERT_SQL = "INSERT INTO url_latency AS l"
+            + " (url_id, resolution, period_start, checks, total_ms, max_ms, sketch) VALUES (?, ?, ?, ?, ?, ?, ?)"
+            + " ON CONFLICT (url_id, resolution, period_start) DO UPDATE SET checks = l.checks + EXCLUDED.checks,"
+            + " total_ms = l.total_ms + EXCLUDED.total_ms, max_ms = GREATEST(l.max_ms, EXCLUDED.max_ms),"
+            + " sketch = CASE WHEN ? OR l.sketch = '' THEN EXCLUDED.sketch"
+            + " ELSE l.sketch || ',' || EXCLUDED.sketch END";
+    private static final String MERGE_SQL = "MERGE INTO url_latency l USING (VALUES (CAST(? AS BIGINT),"
+            + " CAST(? AS VARCHAR(8)), CAST(? AS TIMESTAMP), CAST(? AS BIGINT), CAST(? AS BIGINT),"
+            + " CAST(? AS INTEGER), CAST(? AS VARCHAR(8192)), CAST(? AS BOOLEAN)))"
+            + " AS s (url_id, resolution, period_start, checks, total_ms, max_ms, sketch, replaces)"
+            + " ON l.url_id = s.url_id AND l.resolution = s.resolution AND l.period_start = s.period_start"
+            + " WHEN MATCHED THEN UPDATE SET checks = l.checks + s.checks, total_ms = l.total_ms + s.total_ms,"
+            + " max_ms = GREATEST(l.max_ms, s.max_ms),"
+            + " sketch = CASE WHEN s.replaces OR l.sketch = '' THEN s.sketch ELSE l.sketch || ',' || s.sketch END"
+            + " WHEN NOT MATCHED THEN INSERT (url_id, resolution, period_start, checks, total_ms, max_ms, sketch)"
+            + " VALUES (s.url_id, s.resolution, s.period_start, s.checks, s.total_ms, s.max_ms, s.sketch)";
+
+    private record Key(Long urlId, UrlLatency.Period period, LocalDateTime periodStart) {
+    }
+
+    // The order of the ORDER BY that locks them, which sorts resolution by name
+    private static final Comparator<Key> LOCK_ORDER = Comparator.comparing(Key::urlId)
+            .thenComparing(key -> key.period().name())
+            .thenComparing(Key::periodStart);
+
+    // Adds the timed checks to the hourly and daily rows of their urls in the caller's transaction, so a check
+    // is counted exactly when it is written. The checks are merged per row in memory, the stored rows locked
+    // in one order with a query per LOCK_BATCH_SIZE rows, so concurrent writers wait instead of deadlocking,
+    // and all rows written with one batch.
+    static void record(Connection conn, List<UrlCheck> checks) throws SQLException {
+        Map<Key, UrlLatency> added = new TreeMap<>(LOCK_ORDER);
+        for (UrlCheck check : checks) {
+            if (check.getTotalMillis() == null || check.isRejected()) {
+                continue;
+            }
+            for (var period : UrlLatency.Period.values()) {
+                var key = new Key(check.getUrlId(), period, period.startOf(check.getCreatedAt()));
+                added.computeIfAbsent(key, k -> new UrlLatency(k.urlId(), k.period(), k.periodStart()))
+                        .add(check.getTotalMillis());
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        var stored = lock(conn, new ArrayList<>(added.keySet()));
+        try (PreparedStatement stmt = conn.prepareStatement(isPostgres() ? UPSERT_SQL : MERGE_SQL)) {
+            for (var entry : added.entrySet()) {
+                var latency = entry.getValue();
+                var previous = stored.get(entry.getKey());
+                var sketch = latency.getSketch();
+                if (previous != null) {
+                    sketch = previous.getSketch();
+                    sketch.merge(latency.getSketch());
+                }
+                bindKey(stmt, 1, entry.getKey());
+                stmt.setLong(4, latency.getChecks());
+                stmt.setLong(5, latency.getTotalMillis());
+                stmt.setInt(6, latency.getMaxMillis());
+                stmt.setString(7, sketch.encode());
+                stmt.setBoolean(8, previous != null);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    // At most one row per hour or day from from to to, oldest first, so reading them does not depend
+    // on how many checks there were
+    public static List<UrlLatency> findByUrlId(Long urlId, UrlLatency.Period period, LocalDateTime from,
+                                               LocalDateTime to) throws SQLException {
+        return timed(FIND_BY_URL_ID_TIMER, () -> {
+            String sql = "SELECT * FROM url_latency WHERE url_id = ? AND resolution = ?"
+                    + " AND period_start >= ? AND period_start < ? ORDER BY period_start";
+            List<UrlLatency> result = new ArrayList<>();
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, urlId);
+                stmt.setString(2, period.name());
+                stmt.setTimestamp(3, Timestamp.valueOf(period.startOf(from)));
+                stmt.setTimestamp(4, Timestamp.valueOf(to));
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    result.add(map(rs));
+                }
+            }
+            return result;
+        });
+    }
+
+    // The rows merged into one that starts at from; it has no checks if the url had no timed ones then
+    public static UrlLatency summarize(Long urlId, UrlLatency.Period period, LocalDateTime from, LocalDateTime to)
+            throws SQLException {
+        var summary = new UrlLatency(urlId, period, period.startOf(from));
+        for (UrlLatency latency : findByUrlId(urlId, period, from, to)) {
+            summary.merge(latency);
+        }
+        return summary;
+    }
+
+    public static int deleteBefore(UrlLatency.Period period, LocalDateTime cutoff) throws SQLException {
+        return timed(DELETE_BEFORE_TIMER, () -> {
+            String sql = "DELETE FROM url_latency WHERE resolution = ? AND period_start < ?";
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, period.name());
+                stmt.setTimestamp(2, Timestamp.valueOf(cutoff));
+                return stmt.executeUpdate();
+            }
+        });
+    }
+
+    // The stored rows among keys, locked and keyed by their Key
+    private static Map<Key, UrlLatency> lock(Connection conn, List<Key> keys) throws SQLException {
+        Map<Key, UrlLatency> stored = new HashMap<>();
+        for (int from = 0; from < keys.size(); from += LOCK_BATCH_SIZE) {
+            var batch = keys.subList(from, Math.min(from + LOCK_BATCH_SIZE, keys.size()));
+            String sql = "SELECT * FROM url_latency WHERE (url_id, resolution, period_start) IN ("
+                    + String.join(", ", Collections.nCopies(batch.size(), "(?, ?, ?)")) + ")"
+                    + " ORDER BY url_id, resolution, period_start FOR UPDATE";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    bindKey(stmt, 3 * i + 1, batch.get(i));
+                }
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    var latency = map(rs);
+                    stored.put(new Key(latency.getUrlId(), latency.getPeriod(), latency.getPeriodStart()), latency);
+                }
+            }
+        }
+        return stored;
+    }
+
+    private static void bindKey(PreparedStatement stmt, int first, Key key) throws SQLException {
+        stmt.setLong(first, key.urlId());
+        stmt.setString(first + 1, key.period().name());
+        stmt.setTimestamp(first + 2, Timestamp.valueOf(key.periodStart()));
+    }
+
+    private static UrlLatency map(ResultSet rs) throws SQLException {
+        var latency = new UrlLatency(rs.getLong("url_id"), UrlLatency.Period.valueOf(rs.getString("resolution")),
+                rs.getTimestamp("period_start").toLocalDateTime());
+        latency.setChecks(rs.getLong("checks"));
+        latency.setTotalMillis(rs.getLong("total_ms"));
+        latency.setMaxMillis(rs.getInt("max_ms"));
+        latency.setSketch(LatencySketch.decode(rs.getString("sketch")));
+        return latency;
+    }
+}
@@ -10,106 +10,300 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import hexlet.code.metrics.Histogram;
+import hexlet.code.model.CheckStatus;
 import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.util.Env;
 
 public class UrlRepository extends BaseRepository {
+    private static final Histogram SAVE_TIMER = queryTimer("url", "save");
+    private static final Histogram SAVE_ALL_IF_ABSENT_TIMER = queryTimer("url", "saveAllIfAbsent");
+    private static final Histogram FIND_TIMER = queryTimer("url", "find");
+    private static final Histogram FIND_AFTER_TIMER = queryTimer("url", "findAfter");
+    private static final Histogram OPEN_CURSOR_TIMER = queryTimer("url", "openCursor");
+    private static final Histogram COUNT_TIMER = queryTimer("url", "count");
+    private static final Histogram FIND_PAGE_TIMER = queryTimer("url", "findPage");
+    private static final Histogram DELETE_ALL_TIMER = queryTimer("url", "deleteAll");
+    private static final Histogram FIND_BY_NAME_TIMER = queryTimer("url", "findByName");
+    private static final QueryCache<Long, Optional<Url>> BY_ID = new QueryCache<>("url_by_id");
+    private static final QueryCache<String, Optional<Url>> BY_NAME = new QueryCache<>("url_by_name");
+    private static final int CURSOR_FETCH_SIZE = 500;
+    // Each open cursor holds a pooled connection for as long as its page is sent, so only a few may be open at once
+    private static final Semaphore CURSORS = new Semaphore(Env.getInt("URLS_STREAM_MAX", 2));
+    private static final int CURSOR_TIMEOUT_SECONDS = Env.getInt("URLS_STREAM_TIMEOUT_SECONDS", 120);
+    private static final String INSERT_IF_ABSENT_SQL = "INSERT INTO urls (name, created_at)"
+            + " SELECT CAST(? AS VARCHAR(255)), CAST(? AS TIMESTAMP)"
+            + " WHERE NOT EXISTS (SELECT 1 FROM urls WHERE name = ?)";
+
     public static void save(Url url) throws SQLException {
-        String sql = "INSERT INTO urls (name, created_at) VALUES (?, ?)";
+        timed(SAVE_TIMER, () -> {
+            String sql = "INSERT INTO urls (name, created_at) VALUES (?, ?)";
+            try (var conn = dataSource.getConnection();
+                PreparedStatement preparedStatement = conn.prepareStatement(sql, new String[]{"id"})) {
+                preparedStatement.setString(1, url.getName());
+                preparedStatement.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
+                preparedStatement.executeUpdate();
+                var generatedKeys = preparedStatement.getGeneratedKeys();
+                if (generatedKeys.next()) {
+                    url.setId(generatedKeys.getLong(1));
+                } else {
+                    throw new SQLException("DB have not returned an id after saving an entity");
+                }
+            }
+            BY_ID.invalidate(url.getId());
+            BY_NAME.invalidate(url.getName());
+            UrlSearchRepository.markAdded();
+        });
+    }
+
+    public static boolean saveIfAbsent(Url url) throws SQLException {
+        try {
+            save(url);
+            return true;
+        } catch (SQLException e) {
+            if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    // Inserts the names that are not stored yet in one transaction and returns how many rows were added
+    public static int saveAllIfAbsent(List<String> names) throws SQLException {
+        return timed(SAVE_ALL_IF_ABSENT_TIMER, () -> {
+            if (names.isEmpty()) {
+                return 0;
+            }
+            try {
+                return insertAllIfAbsent(names);
+            } catch (SQLException e) {
+                if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                    throw e;
+                }
+            } finally {
+                names.forEach(BY_NAME::invalidate);
+            }
+            // A concurrent insert of one of the names won the race, so the batch is redone row by row
+            int created = 0;
+            for (String name : names) {
+                if (saveIfAbsent(new Url(name))) {
+                    created++;
+                }
+            }
+            return created;
+        });
+    }
+
+    private static int insertAllIfAbsent(List<String> names) throws SQLException {
         try (var conn = dataSource.getConnection();
-            PreparedStatement preparedStatement = conn.prepareStatement(sql, new String[]{"id"})) {
-            preparedStatement.setString(1, url.getName());
-            preparedStatement.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
-            preparedStatement.executeUpdate();
-            var generatedKeys = preparedStatement.getGeneratedKeys();
-            if (generatedKeys.next()) {
-                url.setId(generatedKeys.getLong(1));
-            } else {
-                throw new SQLException("DB have not returned an id after saving an entity");
+             PreparedStatement stmt = conn.prepareStatement(INSERT_IF_ABSENT_SQL)) {
+            conn.setAutoCommit(false);
+            try {
+                var now = Timestamp.valueOf(LocalDateTime.now());
+                for (String name : names) {
+                    stmt.setString(1, name);
+                    stmt.setTimestamp(2, now);
+                    stmt.setString(3, name);
+                    stmt.addBatch();
+                }
+                int created = 0;
+                for (int count : stmt.executeBatch()) {
+                    created += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                }
+                conn.commit();
+                UrlSearchRepository.markAdded();
+                return created;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
         }
     }
 
     public static Optional<Url> find(Long id) throws SQLException {
-        var sql = "SELECT * FROM urls WHERE id = ?";
-        try (var conn = dataSource.getConnection();
-            var stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, id);
-            var resultSet = stmt.executeQuery();
-
-            if (resultSet.next()) {
-                var make = resultSet.getString("name");
-                var createdAt = resultSet.getTimestamp("created_at").toLocalDateTime();
-                var url = new Url(id, make, createdAt);
-                return Optional.of(url);
+        return BY_ID.get(id, () -> selectById(id));
+    }
+
+    private static Optional<Url> selectById(Long id) throws SQLException {
+        return timed(FIND_TIMER, () -> {
+            var sql = "SELECT * FROM urls WHERE id = ?";
+            try (var conn = dataSource.getConnection();
+                var stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, id);
+                var resultSet = stmt.executeQuery();
+
+                if (resultSet.next()) {
+                    var make = resultSet.getString("name");
+                    var createdAt = resultSet.getTimestamp("created_at").toLocalDateTime();
+                    var url = new Url(id, make, createdAt);
+                    return Optional.of(url);
+                }
+
+                return Optional.empty();
+            }
+        });
+    }
+
+    // The next limit urls by id after afterId, for walking the whole table in short queries
+    public static List<Url> findAfter(long afterId, int limit) throws SQLException {
+        return timed(FIND_AFTER_TIMER, () -> {
+            var sql = "SELECT id, name, created_at FROM urls WHERE id > ? ORDER BY id LIMIT ?";
+            List<Url> urls = new ArrayList<>(limit);
+            try (var conn = dataSource.getConnection();
+                 var stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, afterId);
+                stmt.setInt(2, limit);
+                var resultSet = stmt.executeQuery();
+                while (resultSet.next()) {
+                    urls.add(new Url(
+                            resultSet.getLong("id"),
+                            resultSet.getString("name"),
+                            resultSet.getTimestamp("created_at").toLocalDateTime()));
+                }
             }
+            return urls;
+        });
+    }
 
+    // Every url with its latest check in id order; searching is UrlSearchRepository's job
+    // Empty while URLS_STREAM_MAX cursors are already open
+    public static Optional<UrlCursor> openCursor() throws SQLException {
+        if (!CURSORS.tryAcquire()) {
             return Optional.empty();
         }
+        try {
+            // The latest check is looked up per url through url_checks_url_id_created_at_idx as rows are read,
+            // rather than numbering every check before the first row can be sent
+            var sql = "SELECT u.id, u.name, u.created_at, c.id AS check_id, c.status_code, c.title, c.h1,"
+                    + " c.description, c.created_at AS check_created_at, c.status AS check_status"
+                    + " FROM urls u"
+                    + " LEFT JOIN url_checks c ON c.id = (SELECT uc.id FROM url_checks uc WHERE uc.url_id = u.id"
+                    + " ORDER BY uc.created_at DESC, uc.id DESC LIMIT 1)"
+                    + " ORDER BY u.id";
+            return Optional.of(timed(OPEN_CURSOR_TIMER, () -> openStreaming(sql, UrlRepository::mapWithLatestCheck)));
+        } catch (SQLException | RuntimeException e) {
+            CURSORS.release();
+            throw e;
+        }
     }
 
-    public static List<Url> getEntities() throws SQLException {
-        var sql = "SELECT * FROM urls";
-        try (var conn = dataSource.getConnection();
-             var stmt = conn.prepareStatement(sql)) {
-            var resultSet = stmt.executeQuery();
-            var result = new ArrayList<Url>();
-            while (resultSet.next()) {
-                var id = resultSet.getLong("id");
-                var make = resultSet.getString("name");
-                var createdAt = resultSet.getTimestamp("created_at").toLocalDateTime();
-                var url = new Url(id, make, createdAt);
-                result.add(url);
+    private static UrlCursor openStreaming(String sql, UrlCursor.RowMapper mapper) throws SQLException {
+        var conn = dataSource.getConnection();
+        try {
+            // Postgres streams rows with a fetch size only inside a transaction
+            conn.setAutoCommit(false);
+            var stmt = conn.prepareStatement(sql);
+            stmt.setFetchSize(CURSOR_FETCH_SIZE);
+            stmt.setQueryTimeout(CURSOR_TIMEOUT_SECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CURSOR_TIMEOUT_SECONDS);
+            return new UrlCursor(conn, stmt, mapper, deadline, CURSORS::release);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    public static long count() throws SQLException {
+        return timed(COUNT_TIMER, () -> {
+            var sql = "SELECT COUNT(*) FROM urls";
+            try (var conn = dataSource.getConnection();
+                 var stmt = conn.prepareStatement(sql)) {
+                var resultSet = stmt.executeQuery();
+                resultSet.next();
+                return resultSet.getLong(1);
             }
+        });
+    }
+
+    static Url mapWithLatestCheck(ResultSet resultSet) throws SQLException {
+        var id = resultSet.getLong("id");
+        var name = resultSet.getString("name");
+        var createdAt = resultSet.getTimestamp("created_at").toLocalDateTime();
+        var url = new Url(id, name, createdAt);
 
-            return result;
+        var checkId = resultSet.getLong("check_id");
+        if (!resultSet.wasNull()) {
+            var checkCreatedAt = resultSet.getTimestamp("check_created_at");
+            var check = new UrlCheck(
+                    id,
+                    resultSet.getObject("status_code", Integer.class),
+                    resultSet.getString("title"),
+                    resultSet.getString("h1"),
+                    resultSet.getString("description"),
+                    checkCreatedAt != null ? checkCreatedAt.toLocalDateTime() : null
+            );
+            check.setId(checkId);
+            check.setStatus(CheckStatus.valueOf(resultSet.getString("check_status")));
+            url.setLatestCheck(check);
         }
+        return url;
     }
 
-    public static List<Url> search(String term) throws SQLException {
-        String sql = "SELECT * FROM urls WHERE LOWER(name) LIKE ? OR LOWER(created_at) LIKE ?";
-        List<Url> urls = new ArrayList<>();
-        try (Connection conn = dataSource.getConnection();
-            PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
-            String searchPattern = "%" + term.toLowerCase() + "%";
-            preparedStatement.setString(1, searchPattern);
-            preparedStatement.setString(2, searchPattern);
+    // Up to limit urls after afterId in id order, each with its latest check
+    public static List<Url> findPage(long afterId, int limit) throws SQLException {
+        return timed(FIND_PAGE_TIMER, () -> {
+            String sql = "WITH page AS (SELECT id, name, created_at FROM urls WHERE id > ? ORDER BY id LIMIT ?)"
+                    + " SELECT p.id, p.name, p.created_at, c.id AS check_id, c.status_code, c.title, c.h1,"
+                    + " c.description, c.created_at AS check_created_at, c.status AS check_status"
+                    + " FROM page p"
+                    + " LEFT JOIN (SELECT uc.*, ROW_NUMBER() OVER"
+                    + " (PARTITION BY uc.url_id ORDER BY uc.created_at DESC, uc.id DESC) AS rn"
+                    + " FROM url_checks uc WHERE uc.url_id IN (SELECT id FROM page)) c"
+                    + " ON c.url_id = p.id AND c.rn = 1"
+                    + " ORDER BY p.id";
+            List<Url> urls = new ArrayList<>();
+            try (Connection conn = dataSource.getConnection();
+                PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+                preparedStatement.setLong(1, afterId);
+                preparedStatement.setInt(2, limit);
 
-            ResultSet resultSet = preparedStatement.executeQuery();
+                ResultSet resultSet = preparedStatement.executeQuery();
 
-            while (resultSet.next()) {
-                Long id = resultSet.getLong("id");
-                String name = resultSet.getString("name");
-                LocalDateTime createdAt = resultSet.getTimestamp("created_at").toLocalDateTime();
-
-                Url url = new Url(id, name, createdAt);
-                urls.add(url);
+                while (resultSet.next()) {
+                    urls.add(mapWithLatestCheck(resultSet));
+                }
             }
-        }
-        return urls;
+            return urls;
+        });
     }
 
 
     public static void deleteAll() throws SQLException {
-        String sql = "DELETE FROM urls";
-        try (Connection conn  = dataSource.getConnection()) {
-            Statement stmt = conn.createStatement();
-            stmt.executeUpdate(sql);
-        }
+        timed(DELETE_ALL_TIMER, () -> {
+            String sql = "DELETE FROM urls";
+            try (Connection conn  = dataSource.getConnection()) {
+                Statement stmt = conn.createStatement();
+                stmt.executeUpdate(sql);
+            }
+            QueryCache.invalidateEverything();
+            UrlSearchRepository.clearIndex();
+        });
     }
 
     public static Optional<Url> findByName(String name) throws SQLException {
-        var sql = "SELECT * FROM urls WHERE name = ?";
-        try (var conn = dataSource.getConnection();
-             var stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, name);
-            var resultSet = stmt.executeQuery();
-            if (resultSet.next()) {
-                var id = resultSet.getLong("id");
-                var createdAt = resultSet.getTimestamp("created_at").toLocalDateTime();
-                var url = new Url(id, name, createdAt);
-                return Optional.of(url);
+        return BY_NAME.get(name, () -> selectByName(name));
+    }
+
+    private static Optional<Url> selectByName(String name) throws SQLException {
+        return timed(FIND_BY_NAME_TIMER, () -> {
+            var sql = "SELECT * FROM urls WHERE name = ?";
+            try (var conn = dataSource.getConnection();
+                 var stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, name);
+                var resultSet = stmt.executeQuery();
+                if (resultSet.next()) {
+                    var id = resultSet.getLong("id");
+                    var createdAt = resultSet.getTimestamp("created_at").toLocalDateTime();
+                    var url = new Url(id, name, createdAt);
+                    return Optional.of(url);
+                }
+                return Optional.empty();
             }
-            return Optional.empty();
-        }
+        });
     }
 }
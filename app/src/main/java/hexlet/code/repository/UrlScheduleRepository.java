@@ -0,0 +1,265 @@
+package hexlet.code.repository;
+
+import hexlet.code.metrics.Histogram;
+import hexlet.code.model.UrlSchedule;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+// url_schedule is also the work queue shared by every node: a node leases the schedules it is about to check
+// and keeps the leases alive while it works, so an expired lease means its node is gone and the row is free again.
+// Lease times come from the database clock; next_check_at stays in the nodes' time, as they compute it.
+public class UrlScheduleRepository extends BaseRepository {
+    private static final Histogram SCHEDULE_MISSING_TIMER = queryTimer("url_schedule", "scheduleMissing");
+    private static final Histogram CLAIM_DUE_TIMER = queryTimer("url_schedule", "claimDue");
+    private static final Histogram EXTEND_LEASES_TIMER = queryTimer("url_schedule", "extendLeases");
+    private static final Histogram RELEASE_TIMER = queryTimer("url_schedule", "release");
+    private static final Histogram MARK_ALL_DUE_TIMER = queryTimer("url_schedule", "markAllDue");
+    private static final Histogram FIND_TIMER = queryTimer("url_schedule", "find");
+    private static final Histogram COMPLETE_TIMER = queryTimer("url_schedule", "complete");
+
+    private static final String CLAIM_SKIP_LOCKED_SQL = "WITH claimed AS (UPDATE url_schedule"
+            + " SET leased_by = ?, lease_until = " + LEASE_UNTIL
+            + " WHERE url_id IN (SELECT url_id FROM url_schedule"
+            + " WHERE next_check_at <= ? AND (lease_until IS NULL OR lease_until <= LOCALTIMESTAMP)"
+            + " ORDER BY next_check_at LIMIT ? FOR UPDATE SKIP LOCKED) RETURNING *)"
+            + " SELECT c.*, u.name FROM claimed c JOIN urls u ON u.id = c.url_id ORDER BY c.next_check_at";
+
+    // Schedules up to limit urls that have no schedule yet. Their first check lands at a random point
+    // of the first interval, so a large import does not make every site due at the same moment.
+    public static int scheduleMissing(LocalDateTime now, int intervalSeconds, int limit) throws SQLException {
+        return timed(SCHEDULE_MISSING_TIMER, () -> {
+            try (var conn = dataSource.getConnection()) {
+                List<Long> ids = new ArrayList<>();
+                String select = "SELECT u.id FROM urls u LEFT JOIN url_schedule s ON s.url_id = u.id"
+                        + " WHERE s.url_id IS NULL ORDER BY u.id LIMIT ?";
+                try (PreparedStatement stmt = conn.prepareStatement(select)) {
+                    stmt.setInt(1, limit);
+                    ResultSet rs = stmt.executeQuery();
+                    while (rs.next()) {
+                        ids.add(rs.getLong("id"));
+                    }
+                }
+                if (ids.isEmpty()) {
+                    return 0;
+                }
+                String insert = "INSERT INTO url_schedule (url_id, next_check_at, interval_seconds, stable_checks)"
+                        + " VALUES (?, ?, ?, 0)";
+                conn.setAutoCommit(false);
+                try (PreparedStatement stmt = conn.prepareStatement(insert)) {
+                    var random = ThreadLocalRandom.current();
+                    for (Long id : ids) {
+                        var firstCheckAt = now.plusNanos(random.nextLong(intervalSeconds * 1_000_000_000L));
+                        stmt.setLong(1, id);
+                        stmt.setTimestamp(2, Timestamp.valueOf(firstCheckAt));
+                        stmt.setInt(3, intervalSeconds);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    conn.commit();
+                    return ids.size();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    // Another node scheduled some of them first; whatever is still missing is found next time
+                    if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                        return 0;
+                    }
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+        });
+    }
+
+    // Leases up to limit schedules due by until, earliest first, that no live node holds, for leaseSeconds.
+    // Postgres skips rows another node is claiming at the same moment; elsewhere each row is
+    // taken with a conditional update, so a row claimed twice concurrently goes to one node only.
+    public static List<UrlSchedule> claimDue(String node, LocalDateTime until, int leaseSeconds, int limit)
+            throws SQLException {
+        return timed(CLAIM_DUE_TIMER, () -> {
+            try (var conn = dataSource.getConnection()) {
+                return isPostgres()
+                        ? claimSkipLocked(conn, node, until, leaseSeconds, limit)
+                        : claimConditionally(conn, node, until, leaseSeconds, limit);
+            }
+        });
+    }
+
+    // The heartbeat: keeps the leases the node is still working on, a lease it gave up on just expires
+    public static int extendLeases(String node, Collection<Long> urlIds, int leaseSeconds) throws SQLException {
+        if (urlIds.isEmpty()) {
+            return 0;
+        }
+        return timed(EXTEND_LEASES_TIMER, () -> {
+            String sql = "UPDATE url_schedule SET lease_until = " + LEASE_UNTIL
+                    + " WHERE leased_by = ? AND url_id IN (" + placeholders(urlIds.size()) + ")";
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                int index = 1;
+                stmt.setInt(index++, leaseSeconds);
+                stmt.setString(index++, node);
+                for (Long urlId : urlIds) {
+                    stmt.setLong(index++, urlId);
+                }
+                return stmt.executeUpdate();
+            }
+        });
+    }
+
+    // Gives back leases taken but not worked on, so other nodes need not wait for them to expire
+    public static void release(String node, Collection<Long> urlIds) throws SQLException {
+        if (urlIds.isEmpty()) {
+            return;
+        }
+        timed(RELEASE_TIMER, () -> {
+            String sql = "UPDATE url_schedule SET leased_by = NULL, lease_until = NULL"
+                    + " WHERE leased_by = ? AND url_id IN (" + placeholders(urlIds.size()) + ")";
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                int index = 1;
+                stmt.setString(index++, node);
+                for (Long urlId : urlIds) {
+                    stmt.setLong(index++, urlId);
+                }
+                stmt.executeUpdate();
+            }
+        });
+    }
+
+    // Makes every site due now, for a check of everything that all nodes share
+    public static int markAllDue(LocalDateTime now) throws SQLException {
+        return timed(MARK_ALL_DUE_TIMER, () -> {
+            String sql = "UPDATE url_schedule SET next_check_at = ? WHERE next_check_at > ?";
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setTimestamp(1, Timestamp.valueOf(now));
+                stmt.setTimestamp(2, Timestamp.valueOf(now));
+                return stmt.executeUpdate();
+            }
+        });
+    }
+
+    public static Optional<UrlSchedule> find(Long urlId) throws SQLException {
+        return timed(FIND_TIMER, () -> {
+            String sql = "SELECT * FROM url_schedule WHERE url_id = ?";
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, urlId);
+                ResultSet rs = stmt.executeQuery();
+                return rs.next() ? Optional.of(map(rs)) : Optional.empty();
+            }
+        });
+    }
+
+    // Stores the next check and drops the lease; false if the lease had expired and another node took the row
+    public static boolean complete(UrlSchedule schedule, String node) throws SQLException {
+        return timed(COMPLETE_TIMER, () -> {
+            String sql = "UPDATE url_schedule SET next_check_at = ?, interval_seconds = ?, stable_checks = ?,"
+                    + " last_status_code = ?, last_failed = ?, leased_by = NULL, lease_until = NULL"
+                    + " WHERE url_id = ? AND leased_by = ?";
+            try (var conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setTimestamp(1, Timestamp.valueOf(schedule.getNextCheckAt()));
+                stmt.setInt(2, schedule.getIntervalSeconds());
+                stmt.setInt(3, schedule.getStableChecks());
+                if (schedule.getLastStatusCode() != null) {
+                    stmt.setInt(4, schedule.getLastStatusCode());
+                } else {
+                    stmt.setNull(4, Types.INTEGER);
+                }
+                if (schedule.getLastFailed() != null) {
+                    stmt.setBoolean(5, schedule.getLastFailed());
+                } else {
+                    stmt.setNull(5, Types.BOOLEAN);
+                }
+                stmt.setLong(6, schedule.getUrlId());
+                stmt.setString(7, node);
+                return stmt.executeUpdate() == 1;
+            }
+        });
+    }
+
+    private static List<UrlSchedule> claimSkipLocked(Connection conn, String node, LocalDateTime until,
+                                                     int leaseSeconds, int limit) throws SQLException {
+        List<UrlSchedule> claimed = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(CLAIM_SKIP_LOCKED_SQL)) {
+            stmt.setString(1, node);
+            stmt.setInt(2, leaseSeconds);
+            stmt.setTimestamp(3, Timestamp.valueOf(until));
+            stmt.setInt(4, limit);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                claimed.add(mapWithName(rs));
+            }
+        }
+        return claimed;
+    }
+
+    private static List<UrlSchedule> claimConditionally(Connection conn, String node, LocalDateTime until,
+                                                        int leaseSeconds, int limit) throws SQLException {
+        String select = "SELECT s.*, u.name FROM url_schedule s JOIN urls u ON u.id = s.url_id"
+                + " WHERE s.next_check_at <= ? AND (s.lease_until IS NULL OR s.lease_until <= LOCALTIMESTAMP)"
+                + " ORDER BY s.next_check_at LIMIT ?";
+        List<UrlSchedule> candidates = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(select)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(until));
+            stmt.setInt(2, limit);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                candidates.add(mapWithName(rs));
+            }
+        }
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        // Rechecks both conditions, since another node may have claimed or even completed the row meanwhile
+        String lease = "UPDATE url_schedule SET leased_by = ?, lease_until = " + LEASE_UNTIL
+                + " WHERE url_id = ? AND next_check_at <= ?"
+                + " AND (lease_until IS NULL OR lease_until <= LOCALTIMESTAMP)";
+        List<UrlSchedule> claimed = new ArrayList<>(candidates.size());
+        try (PreparedStatement stmt = conn.prepareStatement(lease)) {
+            for (UrlSchedule schedule : candidates) {
+                stmt.setString(1, node);
+                stmt.setInt(2, leaseSeconds);
+                stmt.setLong(3, schedule.getUrlId());
+                stmt.setTimestamp(4, Timestamp.valueOf(until));
+                stmt.addBatch();
+            }
+            int[] counts = stmt.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    claimed.add(candidates.get(i));
+                }
+            }
+        }
+        return claimed;
+    }
+
+    private static UrlSchedule mapWithName(ResultSet rs) throws SQLException {
+        var schedule = map(rs);
+        schedule.setUrlName(rs.getString("name"));
+        return schedule;
+    }
+
+    private static UrlSchedule map(ResultSet rs) throws SQLException {
+        var schedule = new UrlSchedule(rs.getLong("url_id"), rs.getTimestamp("next_check_at").toLocalDateTime(),
+                rs.getInt("interval_seconds"));
+        schedule.setStableChecks(rs.getInt("stable_checks"));
+        int statusCode = rs.getInt("last_status_code");
+        schedule.setLastStatusCode(rs.wasNull() ? null : statusCode);
+        boolean failed = rs.getBoolean("last_failed");
+        schedule.setLastFailed(rs.wasNull() ? null : failed);
+        return schedule;
+    }
+}
@@ -0,0 +1,248 @@
+package hexlet.code.repository;
+
+import hexlet.code.metrics.Histogram;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.Url;
+import hexlet.code.util.Env;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+// Ranked search over url names and the title, h1 and description of each url's latest completed check.
+// Postgres answers from the trigram-indexed url_search table kept up to date by triggers (migration V5);
+// other databases use a bounded in-process SearchIndex that catches up with new urls and changed checks.
+public class UrlSearchRepository extends BaseRepository {
+    private static final Histogram SEARCH_TIMER = queryTimer("url_search", "search");
+    private static final Histogram REFRESH_TIMER = queryTimer("url_search", "refreshIndex");
+    private static final int LOAD_BATCH_SIZE = 500;
+    private static final int MAX_CANDIDATES = Env.getInt("SEARCH_MAX_CANDIDATES", 1000);
+    private static final long INDEX_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(
+            Env.getLong("SEARCH_INDEX_REFRESH_SECONDS", 30));
+
+    // Only SEARCH_MAX_CANDIDATES rows found through the trigram indexes are ranked, so a term matching most of the
+    // table costs no more than a rare one; past that cap the ranking covers an arbitrary subset of the hits.
+    // The %s is where the page starts: TRUE, or the AFTER keyset condition.
+    private static final String RANKED_SQL = "WITH candidates AS (SELECT s.url_id, s.name_text, s.check_text"
+            + " FROM url_search s WHERE s.name_text LIKE ? ESCAPE '\\' OR s.check_text LIKE ? ESCAPE '\\' LIMIT ?),"
+            + " hits AS (SELECT c.url_id,"
+            + " 2 * word_similarity(?, c.name_text) + word_similarity(?, c.check_text) AS rank FROM candidates c),"
+            + " page AS (SELECT h.url_id, h.rank FROM hits h WHERE %s"
+            + " ORDER BY h.rank DESC, h.url_id LIMIT ? OFFSET ?)"
+            + " SELECT u.id, u.name, u.created_at, c.id AS check_id, c.status_code, c.title, c.h1,"
+            + " c.description, c.created_at AS check_created_at, c.status AS check_status, p.rank"
+            + " FROM page p JOIN urls u ON u.id = p.url_id"
+            + " LEFT JOIN LATERAL (SELECT * FROM url_checks uc WHERE uc.url_id = u.id"
+            + " ORDER BY uc.created_at DESC, uc.id DESC LIMIT 1) c ON TRUE"
+            + " ORDER BY p.rank DESC, p.url_id";
+    private static final String AFTER = "h.rank < ? OR (h.rank = ? AND h.url_id > ?)";
+
+    private static final SearchIndex INDEX = new SearchIndex(Env.getInt("SEARCH_INDEX_MAX_URLS", 100_000));
+    private static DataSource indexedDataSource;
+    private static volatile boolean indexChanged = true;
+    private static long indexRefreshedAt;
+
+    private record Ranked(Url url, double rank) {
+    }
+
+    public static List<Url> search(String term, int offset, int limit) throws SQLException {
+        return page(term, null, offset, limit).stream().map(Ranked::url).toList();
+    }
+
+    // Every hit in rank order, loaded LOAD_BATCH_SIZE at a time as the caller reads on, each batch starting
+    // right after the rank and id of the last one. Like UrlCursor it is read once; a url added or rechecked
+    // meanwhile may shift the ranks and be shown twice or skipped.
+    public static Iterable<Url> searchAll(String term) {
+        var hits = new Iterator<Url>() {
+            private List<Ranked> batch = List.of();
+            private int position;
+            private Ranked last;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                while (position == batch.size() && !exhausted) {
+                    try {
+                        batch = page(term, last, 0, LOAD_BATCH_SIZE);
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Failed to read the next urls", e);
+                    }
+                    position = 0;
+                    exhausted = batch.size() < LOAD_BATCH_SIZE;
+                    last = batch.isEmpty() ? last : batch.get(batch.size() - 1);
+                }
+                return position < batch.size();
+            }
+
+            @Override
+            public Url next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.get(position++).url();
+            }
+        };
+        return () -> hits;
+    }
+
+    static void markStale(Long urlId) {
+        INDEX.markStale(urlId);
+        indexChanged = true;
+    }
+
+    static void markAdded() {
+        indexChanged = true;
+    }
+
+    static void clearIndex() {
+        INDEX.clear();
+        indexChanged = true;
+    }
+
+    // Hits ranked after the given one, or from offset when there is none
+    private static List<Ranked> page(String term, Ranked after, int offset, int limit) throws SQLException {
+        return timed(SEARCH_TIMER, () -> {
+            String needle = term.trim().toLowerCase();
+            if (isPostgres()) {
+                return searchIndexedTable(needle, after, offset, limit);
+            }
+            refreshIndex();
+            var hits = after == null
+                    ? INDEX.search(needle, offset, limit)
+                    : INDEX.searchAfter(needle, new SearchIndex.Hit(after.url().getId(), (int) after.rank()), limit);
+            List<Long> ids = new ArrayList<>(hits.size());
+            for (var hit : hits) {
+                ids.add(hit.urlId());
+            }
+            var byId = findWithLatestChecks(ids);
+            List<Ranked> ranked = new ArrayList<>(hits.size());
+            for (var hit : hits) {
+                var url = byId.get(hit.urlId());
+                if (url != null) {
+                    ranked.add(new Ranked(url, hit.score()));
+                }
+            }
+            return ranked;
+        });
+    }
+
+    private static List<Ranked> searchIndexedTable(String needle, Ranked after, int offset, int limit)
+            throws SQLException {
+        String pattern = "%" + needle.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        List<Ranked> urls = new ArrayList<>(limit);
+        String sql = String.format(RANKED_SQL, after == null ? "TRUE" : AFTER);
+        try (var conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            stmt.setString(index++, pattern);
+            stmt.setString(index++, pattern);
+            stmt.setInt(index++, MAX_CANDIDATES);
+            stmt.setString(index++, needle);
+            stmt.setString(index++, needle);
+            if (after != null) {
+                stmt.setDouble(index++, after.rank());
+                stmt.setDouble(index++, after.rank());
+                stmt.setLong(index++, after.url().getId());
+            }
+            stmt.setInt(index++, limit);
+            stmt.setInt(index, offset);
+            var resultSet = stmt.executeQuery();
+            while (resultSet.next()) {
+                urls.add(new Ranked(UrlRepository.mapWithLatestCheck(resultSet), resultSet.getDouble("rank")));
+            }
+        }
+        return urls;
+    }
+
+    // Runs when this node wrote urls or checks since the last refresh, and at least every
+    // SEARCH_INDEX_REFRESH_SECONDS for anything written elsewhere. One refresh at a time; writes made while it
+    // runs are marked stale and picked up by the next one.
+    private static synchronized void refreshIndex() throws SQLException {
+        if (indexedDataSource == dataSource && !indexChanged
+                && System.nanoTime() - indexRefreshedAt < INDEX_REFRESH_NANOS) {
+            return;
+        }
+        timed(REFRESH_TIMER, () -> {
+            if (indexedDataSource != dataSource) {
+                INDEX.clear();
+                indexedDataSource = dataSource;
+            }
+            indexChanged = false;
+            indexRefreshedAt = System.nanoTime();
+            INDEX.markLoaded();
+            loadDocuments("%s > ?", List.of(INDEX.getMaxUrlId()));
+            List<Long> stale = INDEX.takeStale();
+            for (int from = 0; from < stale.size(); from += LOAD_BATCH_SIZE) {
+                var ids = stale.subList(from, Math.min(from + LOAD_BATCH_SIZE, stale.size()));
+                loadDocuments("%s IN (" + placeholders(ids.size()) + ")", ids);
+            }
+        });
+    }
+
+    // condition has a %s for the url id column and is applied to both urls and url_checks
+    private static void loadDocuments(String condition, List<Long> parameters) throws SQLException {
+        String sql = "SELECT u.id, u.name, c.title, c.h1, c.description FROM urls u"
+                + " LEFT JOIN (SELECT uc.url_id, uc.title, uc.h1, uc.description, ROW_NUMBER() OVER"
+                + " (PARTITION BY uc.url_id ORDER BY uc.created_at DESC, uc.id DESC) AS rn"
+                + " FROM url_checks uc WHERE uc.status = ? AND " + String.format(condition, "uc.url_id") + ") c"
+                + " ON c.url_id = u.id AND c.rn = 1"
+                + " WHERE " + String.format(condition, "u.id");
+        try (var conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            stmt.setString(index++, CheckStatus.DONE.name());
+            for (int pass = 0; pass < 2; pass++) {
+                for (Long parameter : parameters) {
+                    stmt.setLong(index++, parameter);
+                }
+            }
+            var resultSet = stmt.executeQuery();
+            while (resultSet.next()) {
+                var text = String.join(" ", nonNull(resultSet.getString("title")),
+                        nonNull(resultSet.getString("h1")), nonNull(resultSet.getString("description")));
+                INDEX.put(resultSet.getLong("id"), resultSet.getString("name"), text.trim());
+            }
+        }
+    }
+
+    private static Map<Long, Url> findWithLatestChecks(List<Long> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        String sql = "SELECT u.id, u.name, u.created_at, c.id AS check_id, c.status_code, c.title, c.h1,"
+                + " c.description, c.created_at AS check_created_at, c.status AS check_status"
+                + " FROM urls u"
+                + " LEFT JOIN (SELECT uc.*, ROW_NUMBER() OVER"
+                + " (PARTITION BY uc.url_id ORDER BY uc.created_at DESC, uc.id DESC) AS rn"
+                + " FROM url_checks uc WHERE uc.url_id IN (" + placeholders(ids.size()) + ")) c"
+                + " ON c.url_id = u.id AND c.rn = 1"
+                + " WHERE u.id IN (" + placeholders(ids.size()) + ")";
+        Map<Long, Url> byId = new HashMap<>();
+        try (var conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (int pass = 0; pass < 2; pass++) {
+                for (Long id : ids) {
+                    stmt.setLong(index++, id);
+                }
+            }
+            var resultSet = stmt.executeQuery();
+            while (resultSet.next()) {
+                var url = UrlRepository.mapWithLatestCheck(resultSet);
+                byId.put(url.getId(), url);
+            }
+        }
+        return byId;
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+}
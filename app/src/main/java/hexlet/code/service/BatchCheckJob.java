@@ -0,0 +1,216 @@
+package hexlet.code.service;
+
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.JobLeaseRepository;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.repository.UrlScheduleRepository;
+import hexlet.code.util.Env;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class BatchCheckJob {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchCheckJob.class);
+
+    private static final int CONCURRENCY = Env.getInt("BATCH_CHECK_CONCURRENCY", 32);
+    private static final int PER_HOST = Env.getInt("BATCH_CHECK_PER_HOST", 2);
+    private static final long HOST_WAIT_MS = Env.getLong("BATCH_CHECK_HOST_WAIT_MS", 30_000);
+    private static final long INTERVAL_MINUTES = Env.getLong("BATCH_CHECK_INTERVAL_MINUTES", 0);
+    private static final int PAGE_SIZE = Env.getInt("BATCH_CHECK_PAGE_SIZE", 500);
+    private static final String LEASE = "batch_check";
+
+    private static final AtomicBoolean RUNNING = new AtomicBoolean();
+    private static volatile Progress lastProgress;
+    private static ScheduledExecutorService scheduler;
+
+    private BatchCheckJob() {
+    }
+
+    public static final class Progress {
+        private final long total;
+        private final Instant startedAt = Instant.now();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile Instant finishedAt;
+
+        Progress(long total) {
+            this.total = total;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getCompleted() {
+            return completed.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        public boolean isFinished() {
+            return finishedAt != null;
+        }
+
+        public double getChecksPerSecond() {
+            var end = finishedAt != null ? finishedAt : Instant.now();
+            double seconds = Math.max(Duration.between(startedAt, end).toMillis(), 1) / 1000.0;
+            return completed.get() / seconds;
+        }
+    }
+
+    public static Optional<Progress> getProgress() {
+        return Optional.ofNullable(lastProgress);
+    }
+
+    public static boolean startAsync() {
+        if (!RUNNING.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread.ofVirtual().name("batch-check").start(BatchCheckJob::runClaimed);
+        return true;
+    }
+
+    public static boolean run() {
+        if (!RUNNING.compareAndSet(false, true)) {
+            return false;
+        }
+        runClaimed();
+        return true;
+    }
+
+    public static synchronized void startSchedule() {
+        if (INTERVAL_MINUTES <= 0 || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("batch-check-scheduler").daemon().factory());
+        scheduler.scheduleWithFixedDelay(BatchCheckJob::runScheduled, INTERVAL_MINUTES, INTERVAL_MINUTES,
+                TimeUnit.MINUTES);
+    }
+
+    public static synchronized void stopSchedule() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // Only the node holding the lease for this interval runs it. With the monitor on, a scheduled run only
+    // makes every site due, and the monitors of all nodes share the checks instead of one node checking everything
+    private static void runScheduled() {
+        try {
+            if (!JobLeaseRepository.tryAcquire(LEASE, MonitorScheduler.NODE, (int) (INTERVAL_MINUTES * 60))) {
+                return;
+            }
+            if (!MonitorScheduler.isEnabled()) {
+                startAsync();
+                return;
+            }
+            int due = UrlScheduleRepository.markAllDue(LocalDateTime.now());
+            LOG.info("Scheduled check of all sites handed to the monitor: {} sites made due", due);
+        } catch (SQLException e) {
+            LOG.error("Scheduled batch check could not start", e);
+        }
+    }
+
+    private static void runClaimed() {
+        try {
+            checkAll();
+        } catch (Exception e) {
+            LOG.error("Batch check failed", e);
+        } finally {
+            if (lastProgress != null && lastProgress.finishedAt == null) {
+                lastProgress.finishedAt = Instant.now();
+            }
+            RUNNING.set(false);
+        }
+    }
+
+    private static void checkAll() throws SQLException, InterruptedException {
+        var progress = new Progress(UrlRepository.count());
+        lastProgress = progress;
+
+        var fetchSlots = new Semaphore(CONCURRENCY);
+        // Bounds the number of spawned tasks so a huge table is not materialized as waiting threads
+        var inFlight = new Semaphore(CONCURRENCY * 4);
+        Map<String, Semaphore> hostSlots = new ConcurrentHashMap<>();
+
+        // Urls are read a page at a time by id, so no connection or transaction stays open while sites are fetched
+        try (var executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("batch-check-", 0).factory())) {
+            long afterId = 0;
+            List<Url> page;
+            do {
+                page = UrlRepository.findAfter(afterId, PAGE_SIZE);
+                for (Url url : page) {
+                    inFlight.acquire();
+                    var hostSlot = hostSlots.computeIfAbsent(HostGuard.hostOf(url.getName()),
+                            host -> new Semaphore(PER_HOST));
+                    executor.execute(() -> {
+                        try {
+                            record(fetch(url, hostSlot, fetchSlots), progress);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } catch (SQLException e) {
+                            LOG.warn("Could not load the previous check of {}", url.getName(), e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                    afterId = url.getId();
+                }
+            } while (page.size() == PAGE_SIZE);
+        }
+        CheckWriter.flush();
+        progress.finishedAt = Instant.now();
+        LOG.info("Batch check finished: {} of {} sites checked, {} failed, {} checks/s",
+                progress.getCompleted(), progress.getTotal(), progress.getFailed(),
+                String.format("%.1f", progress.getChecksPerSecond()));
+    }
+
+    private static UrlCheck fetch(Url url, Semaphore hostSlot, Semaphore fetchSlots)
+            throws InterruptedException, SQLException {
+        var previous = UrlCheckRepository.findLatestCompletedByUrlId(url.getId()).orElse(null);
+        hostSlot.acquire();
+        try {
+            fetchSlots.acquire();
+            try {
+                var check = new UrlCheck(url.getId(), null, null, null, null, LocalDateTime.now());
+                UrlCheckService.fetch(check, url.getName(), previous, HOST_WAIT_MS);
+                return check;
+            } finally {
+                fetchSlots.release();
+            }
+        } finally {
+            hostSlot.release();
+        }
+    }
+
+    private static void record(UrlCheck check, Progress progress) throws InterruptedException {
+        if (!check.isRejected()) {
+            CheckWriter.enqueue(check);
+        }
+        progress.completed.incrementAndGet();
+        if (check.getStatus() == CheckStatus.FAILED) {
+            progress.failed.incrementAndGet();
+        }
+    }
+}
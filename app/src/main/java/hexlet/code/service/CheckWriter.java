@@ -0,0 +1,176 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Histogram;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.util.Env;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Write-behind buffer for finished checks, written in JDBC batches of BATCH_SIZE or FLUSH_INTERVAL_MS after
+// the first pending one. A result is durable only once its batch commits, so a crash loses at most one buffer;
+// a check started from the url page keeps its QUEUED/RUNNING row in that case. flush() runs on shutdown.
+public final class CheckWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(CheckWriter.class);
+
+    private static final int BATCH_SIZE = Env.getInt("CHECK_WRITE_BATCH_SIZE", 100);
+    private static final long FLUSH_INTERVAL_MS = Env.getLong("CHECK_WRITE_FLUSH_INTERVAL_MS", 50);
+    private static final int CAPACITY = Env.getInt("CHECK_WRITE_BUFFER_CAPACITY", 4096);
+    private static final int RETRIES = Env.getInt("CHECK_WRITE_RETRIES", 3);
+    private static final long RETRY_BACKOFF_MS = Env.getLong("CHECK_WRITE_RETRY_BACKOFF_MS", 100);
+    private static final String WRITE_ERROR = "Не удалось сохранить результат проверки";
+
+    private static final BlockingQueue<UrlCheck> PENDING = new LinkedBlockingQueue<>(CAPACITY);
+    private static final AtomicLong UNWRITTEN = new AtomicLong();
+    private static final ReentrantLock WRITE_LOCK = new ReentrantLock();
+
+    private static final Histogram FLUSH_TIMER = Metrics.histogram("check_write_flush_seconds",
+            "Time to write one batch of finished checks", "");
+    private static final LongAdder WRITTEN = Metrics.counter("check_writes_total",
+            "Finished checks written by the write-behind buffer", "result=\"ok\"");
+    private static final LongAdder FAILED = Metrics.counter("check_writes_total",
+            "Finished checks written by the write-behind buffer", "result=\"failed\"");
+
+    static {
+        Thread.ofVirtual().name("check-writer").start(CheckWriter::runFlusher);
+    }
+
+    private CheckWriter() {
+    }
+
+    // Blocks when the buffer is full so producers slow down to the database's pace
+    public static void enqueue(UrlCheck check) throws InterruptedException {
+        UNWRITTEN.incrementAndGet();
+        try {
+            PENDING.put(check);
+        } catch (InterruptedException e) {
+            UNWRITTEN.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public static void flush() {
+        while (UNWRITTEN.get() > 0 && !Thread.currentThread().isInterrupted()) {
+            WRITE_LOCK.lock();
+            try {
+                List<UrlCheck> batch = new ArrayList<>(BATCH_SIZE);
+                while (PENDING.drainTo(batch, BATCH_SIZE) > 0) {
+                    write(batch);
+                    batch.clear();
+                }
+            } finally {
+                WRITE_LOCK.unlock();
+            }
+            if (UNWRITTEN.get() > 0) {
+                // The flusher holds a batch it took before we got the lock
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private static void runFlusher() {
+        List<UrlCheck> batch = new ArrayList<>(BATCH_SIZE);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(PENDING.take());
+                WRITE_LOCK.lock();
+                try {
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS);
+                    while (batch.size() < BATCH_SIZE) {
+                        PENDING.drainTo(batch, BATCH_SIZE - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= BATCH_SIZE || remaining <= 0) {
+                            break;
+                        }
+                        var next = PENDING.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    write(batch);
+                } finally {
+                    batch.clear();
+                    WRITE_LOCK.unlock();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // The batch is one transaction. If it still fails after the retries, each check is written on its own
+    // so one bad row costs only itself; a check that cannot be written either is stored as FAILED instead.
+    private static void write(List<UrlCheck> batch) {
+        long start = System.nanoTime();
+        try {
+            writeWithRetries(batch);
+            WRITTEN.add(batch.size());
+        } catch (Exception e) {
+            LOG.warn("Could not write {} finished checks as a batch, writing them one by one", batch.size(), e);
+            for (UrlCheck check : batch) {
+                writeOne(check);
+            }
+        } finally {
+            UNWRITTEN.addAndGet(-batch.size());
+            FLUSH_TIMER.observeNanos(System.nanoTime() - start);
+        }
+    }
+
+    private static void writeOne(UrlCheck check) {
+        try {
+            writeWithRetries(List.of(check));
+            WRITTEN.increment();
+            return;
+        } catch (Exception e) {
+            LOG.error("Could not write check of url {}, storing it as failed", check.getUrlId(), e);
+        }
+        FAILED.increment();
+        // Only what identifies the check is kept, since any of the results may be what the database refused
+        var failed = new UrlCheck(check.getUrlId(), null, null, null, null, check.getCreatedAt());
+        failed.setId(check.getId());
+        failed.setStatus(CheckStatus.FAILED);
+        failed.setError(WRITE_ERROR);
+        try {
+            writeWithRetries(List.of(failed));
+        } catch (Exception e) {
+            LOG.error("Could not store the failed check of url {}", check.getUrlId(), e);
+        }
+    }
+
+    private static void writeWithRetries(List<UrlCheck> checks) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                UrlCheckRepository.writeAll(checks);
+                return;
+            } catch (SQLException e) {
+                if (attempt > RETRIES || !isTransient(e)) {
+                    throw e;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RETRY_BACKOFF_MS * attempt));
+            }
+        }
+    }
+
+    // Lost connections (class 08) and deadlocks or serialization failures (class 40) may succeed on a retry
+    private static boolean isTransient(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransientException || e instanceof SQLRecoverableException
+                || state != null && (state.startsWith("08") || state.startsWith("40"));
+    }
+}
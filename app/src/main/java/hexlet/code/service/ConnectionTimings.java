@@ -0,0 +1,51 @@
+package hexlet.code.service;
+
+import java.util.concurrent.TimeUnit;
+
+// What the fetch running on the current thread spent resolving hosts and opening connections, TLS included.
+// Only a new connection costs either, so both stay null for a fetch served entirely by pooled connections.
+final class ConnectionTimings {
+    private static final ThreadLocal<ConnectionTimings> CURRENT = new ThreadLocal<>();
+
+    private long dnsNanos = -1;
+    private long connectNanos = -1;
+
+    private ConnectionTimings() {
+    }
+
+    static ConnectionTimings start() {
+        var timings = new ConnectionTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    static void stop() {
+        CURRENT.remove();
+    }
+
+    static void recordDns(long nanos) {
+        var timings = CURRENT.get();
+        if (timings != null) {
+            timings.dnsNanos = Math.max(timings.dnsNanos, 0) + nanos;
+        }
+    }
+
+    static void recordConnect(long nanos) {
+        var timings = CURRENT.get();
+        if (timings != null) {
+            timings.connectNanos = Math.max(timings.connectNanos, 0) + nanos;
+        }
+    }
+
+    Integer getDnsMillis() {
+        return toMillis(dnsNanos);
+    }
+
+    Integer getConnectMillis() {
+        return toMillis(connectNanos);
+    }
+
+    static Integer toMillis(long nanos) {
+        return nanos < 0 ? null : (int) TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,133 @@
+package hexlet.code.service;
+
+import hexlet.code.util.Env;
+import kong.unirest.Unirest;
+import kong.unirest.UnirestInstance;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+public final class FetchClient {
+    private static final int CONNECT_TIMEOUT_MS = Env.getInt("CHECK_CONNECT_TIMEOUT_MS", 5_000);
+    private static final int SOCKET_TIMEOUT_MS = Env.getInt("CHECK_SOCKET_TIMEOUT_MS", 10_000);
+    private static final int MAX_CONNECTIONS = Env.getInt("CHECK_MAX_CONNECTIONS", 200);
+    private static final int MAX_CONNECTIONS_PER_ROUTE = Env.getInt("CHECK_MAX_CONNECTIONS_PER_ROUTE", 4);
+    private static final long CONNECTION_TTL_SECONDS = Env.getLong("CHECK_CONNECTION_TTL_SECONDS", 60);
+    private static final long KEEP_ALIVE_SECONDS = Env.getLong("CHECK_KEEP_ALIVE_SECONDS", 30);
+    private static final String USER_AGENT = Env.get("CHECK_USER_AGENT", "page-analyzer");
+
+    private static final UnirestInstance INSTANCE = create();
+
+    private FetchClient() {
+    }
+
+    public static UnirestInstance get() {
+        return INSTANCE;
+    }
+
+    // Kept apart from the global Unirest config so checks get their own pool, timeouts and redirect policy
+    private static UnirestInstance create() {
+        var instance = Unirest.spawnInstance();
+        instance.config()
+                .connectTimeout(CONNECT_TIMEOUT_MS)
+                .socketTimeout(SOCKET_TIMEOUT_MS)
+                .followRedirects(false)
+                .automaticRetries(false)
+                .setDefaultHeader("User-Agent", USER_AGENT)
+                .httpClient(createHttpClient());
+        return instance;
+    }
+
+    // Built here rather than by Unirest so new connections go through the timed resolver and socket factories,
+    // and so responses arrive as sent: PageFetcher follows redirects and decompresses bodies itself.
+    private static HttpClient createHttpClient() {
+        Registry<ConnectionSocketFactory> sockets = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", new TimedPlainSockets())
+                .register("https", new TimedTlsSockets())
+                .build();
+        var connections = new PoolingHttpClientConnectionManager(sockets, null, null, FetchClient::resolve,
+                CONNECTION_TTL_SECONDS, TimeUnit.SECONDS);
+        connections.setMaxTotal(MAX_CONNECTIONS);
+        connections.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        return HttpClients.custom()
+                .setConnectionManager(connections)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(CONNECT_TIMEOUT_MS)
+                        .setSocketTimeout(SOCKET_TIMEOUT_MS)
+                        .build())
+                .disableAutomaticRetries()
+                .disableRedirectHandling()
+                .disableContentCompression()
+                .setKeepAliveStrategy(FetchClient::keepAlive)
+                .evictExpiredConnections()
+                .evictIdleConnections(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS)
+                .build();
+    }
+
+    // The server's Keep-Alive timeout, but never longer than CHECK_KEEP_ALIVE_SECONDS: most servers send none
+    // and drop idle connections on their own, and reusing one they already closed fails the check
+    private static long keepAlive(HttpResponse response, HttpContext context) {
+        long fromServer = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        long max = TimeUnit.SECONDS.toMillis(KEEP_ALIVE_SECONDS);
+        return fromServer > 0 ? Math.min(fromServer, max) : max;
+    }
+
+    private static InetAddress[] resolve(String host) throws UnknownHostException {
+        long start = System.nanoTime();
+        try {
+            return SystemDefaultDnsResolver.INSTANCE.resolve(host);
+        } finally {
+            ConnectionTimings.recordDns(System.nanoTime() - start);
+        }
+    }
+
+    private static final class TimedPlainSockets extends PlainConnectionSocketFactory {
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            } finally {
+                ConnectionTimings.recordConnect(System.nanoTime() - start);
+            }
+        }
+    }
+
+    // Connecting includes the TLS handshake
+    private static final class TimedTlsSockets extends SSLConnectionSocketFactory {
+        TimedTlsSockets() {
+            super(SSLContexts.createDefault(), getDefaultHostnameVerifier());
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            } finally {
+                ConnectionTimings.recordConnect(System.nanoTime() - start);
+            }
+        }
+    }
+}
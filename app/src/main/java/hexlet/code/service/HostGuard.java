@@ -0,0 +1,175 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Metrics;
+import hexlet.code.util.Env;
+import lombok.Getter;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-host token bucket plus circuit breaker in front of every outbound check
+public final class HostGuard {
+    private static final double RATE_PER_MINUTE = Env.getInt("CHECK_HOST_RATE_PER_MINUTE", 30);
+    private static final int BURST = Env.getInt("CHECK_HOST_BURST", 5);
+    private static final int FAILURE_THRESHOLD = Env.getInt("CHECK_BREAKER_FAILURES", 5);
+    private static final long OPEN_NANOS = TimeUnit.SECONDS.toNanos(Env.getLong("CHECK_BREAKER_OPEN_SECONDS", 60));
+    // Long enough for an idle bucket to refill, so forgetting the host changes nothing but its failure streak
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(Env.getLong("CHECK_HOST_IDLE_SECONDS", 600));
+
+    private static final Map<String, Host> HOSTS = new ConcurrentHashMap<>();
+    private static final AtomicLong SWEPT_AT = new AtomicLong(System.nanoTime());
+
+    private static final LongAdder RATE_LIMITED = rejections("rate_limited");
+    private static final LongAdder CIRCUIT_OPEN = rejections("circuit_open");
+
+    @Getter
+    public enum State {
+        CLOSED("Доступен"),
+        OPEN("Недоступен, проверки приостановлены"),
+        HALF_OPEN("Пробная проверка");
+
+        private final String label;
+
+        State(String label) {
+            this.label = label;
+        }
+    }
+
+    private HostGuard() {
+    }
+
+    public static String hostOf(String urlName) {
+        var uri = URI.create(urlName);
+        if (uri.getHost() == null) {
+            return urlName;
+        }
+        var host = uri.getHost().toLowerCase();
+        return uri.getPort() == -1 ? host : host + ":" + uri.getPort();
+    }
+
+    public static State stateOf(String host) {
+        var state = HOSTS.get(host);
+        return state == null ? State.CLOSED : state.state();
+    }
+
+    // Returns null when the request may go out, otherwise the reason it was refused.
+    // Waits up to maxWaitMs for a token so batch checks slow down instead of failing.
+    public static String acquire(String host, long maxWaitMs) throws InterruptedException {
+        long now = System.nanoTime();
+        long sweptAt = SWEPT_AT.get();
+        if (now - sweptAt >= IDLE_NANOS && SWEPT_AT.compareAndSet(sweptAt, now)) {
+            evictIdle(now);
+        }
+        var state = HOSTS.computeIfAbsent(host, key -> new Host());
+        long waitNanos = state.reserve(TimeUnit.MILLISECONDS.toNanos(maxWaitMs));
+        if (waitNanos == Host.CIRCUIT_OPEN) {
+            CIRCUIT_OPEN.increment();
+            return "Хост недоступен после " + FAILURE_THRESHOLD + " неудачных проверок подряд, проверка отложена";
+        }
+        if (waitNanos == Host.RATE_LIMITED) {
+            RATE_LIMITED.increment();
+            return "Слишком частые проверки хоста, попробуйте позже";
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return null;
+    }
+
+    public static void recordResult(String host, boolean success) {
+        var state = HOSTS.get(host);
+        if (state != null) {
+            state.record(success);
+        }
+    }
+
+    public static void reset() {
+        HOSTS.clear();
+    }
+
+    // Drops hosts not used for CHECK_HOST_IDLE_SECONDS so the map only holds hosts still being checked.
+    // A check racing with the sweep may record its result on the dropped entry, which only loses that result.
+    public static int evictIdle(long nanoTime) {
+        int evicted = 0;
+        for (var entry : HOSTS.entrySet()) {
+            if (entry.getValue().isIdle(nanoTime) && HOSTS.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private static LongAdder rejections(String reason) {
+        return Metrics.counter("check_host_rejections_total", "Checks refused by the per-host guard",
+                "reason=\"" + reason + "\"");
+    }
+
+    private static final class Host {
+        static final long CIRCUIT_OPEN = -1;
+        static final long RATE_LIMITED = -2;
+
+        private double tokens = BURST;
+        private long refilledAt = System.nanoTime();
+        private int consecutiveFailures;
+        private State state = State.CLOSED;
+        private long openedAt;
+        private boolean trialInFlight;
+        private long usedAt = System.nanoTime();
+
+        synchronized State state() {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= OPEN_NANOS) {
+                return State.HALF_OPEN;
+            }
+            return state;
+        }
+
+        // An open circuit is kept until its trial would have been allowed and the host then sat idle as well
+        synchronized boolean isIdle(long now) {
+            return !trialInFlight && now - usedAt >= IDLE_NANOS
+                    && (state != State.OPEN || now - openedAt >= OPEN_NANOS + IDLE_NANOS);
+        }
+
+        synchronized long reserve(long maxWaitNanos) {
+            long now = System.nanoTime();
+            usedAt = now;
+            if (state == State.OPEN && now - openedAt < OPEN_NANOS
+                    || state == State.HALF_OPEN && trialInFlight) {
+                return CIRCUIT_OPEN;
+            }
+            double ratePerNano = RATE_PER_MINUTE / TimeUnit.MINUTES.toNanos(1);
+            tokens = Math.min(BURST, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            long waitNanos = tokens >= 1 ? 0 : (long) ((1 - tokens) / ratePerNano);
+            if (waitNanos > maxWaitNanos) {
+                return RATE_LIMITED;
+            }
+            tokens -= 1;
+            if (state == State.OPEN) {
+                state = State.HALF_OPEN;
+            }
+            if (state == State.HALF_OPEN) {
+                trialInFlight = true;
+            }
+            return waitNanos;
+        }
+
+        synchronized void record(boolean success) {
+            trialInFlight = false;
+            usedAt = System.nanoTime();
+            if (success) {
+                consecutiveFailures = 0;
+                state = State.CLOSED;
+                return;
+            }
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Metrics;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlSchedule;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlScheduleRepository;
+import hexlet.code.util.Env;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Checks every url continuously on its own interval, kept in url_schedule so it survives restarts.
+// The interval doubles after a run of checks with the same outcome and halves when the outcome flips.
+// Every node runs one; each leases the schedules it loads, so a site is checked by one node at a time
+// and the schedules held by a node that stops heartbeating are taken over once their leases expire.
+public final class MonitorScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(MonitorScheduler.class);
+
+    private static final boolean ENABLED = Env.getBoolean("MONITOR_ENABLED", false);
+    private static final int INTERVAL_SECONDS = Env.getInt("MONITOR_INTERVAL_SECONDS", 300);
+    private static final int MIN_INTERVAL_SECONDS = Env.getInt("MONITOR_MIN_INTERVAL_SECONDS", 60);
+    private static final int MAX_INTERVAL_SECONDS = Env.getInt("MONITOR_MAX_INTERVAL_SECONDS", 6 * 60 * 60);
+    private static final int STABLE_CHECKS = Env.getInt("MONITOR_STABLE_CHECKS", 3);
+    private static final int CONCURRENCY = Env.getInt("MONITOR_CONCURRENCY", 16);
+    private static final long HOST_WAIT_MS = Env.getLong("MONITOR_HOST_WAIT_MS", 30_000);
+    private static final long TICK_MS = Env.getLong("MONITOR_TICK_MS", 1_000);
+    private static final int LOOKAHEAD_SECONDS = Env.getInt("MONITOR_LOOKAHEAD_SECONDS", 30);
+    private static final int LOAD_LIMIT = Env.getInt("MONITOR_LOAD_LIMIT", 1_000);
+    private static final int MAX_CLAIMED = Env.getInt("MONITOR_MAX_CLAIMED", CONCURRENCY * 4);
+    private static final int LEASE_SECONDS = Env.getInt("MONITOR_LEASE_SECONDS", 120);
+    static final String NODE = Env.get("NODE_ID", ManagementFactory.getRuntimeMXBean().getName());
+    private static final double JITTER = 0.1;
+
+    private static final LongAdder CHECKS = Metrics.counter("monitor_checks_total",
+            "Checks started by the monitor", "");
+    private static final LongAdder LEASES_LOST = Metrics.counter("monitor_leases_lost_total",
+            "Monitored checks finished after their lease had expired and passed to another node", "");
+
+    // Loaded a lookahead window ahead and only touched by the tick; QUEUED also covers checks still running
+    private static final PriorityQueue<UrlSchedule> DUE = new PriorityQueue<>(
+            Comparator.comparing(UrlSchedule::getNextCheckAt));
+    private static final Set<Long> QUEUED = ConcurrentHashMap.newKeySet();
+    private static final Semaphore SLOTS = new Semaphore(CONCURRENCY);
+    private static final ExecutorService EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("monitor-check-", 0).factory());
+
+    private static ScheduledExecutorService scheduler;
+    private static LocalDateTime nextLoadAt = LocalDateTime.MIN;
+    private static LocalDateTime nextHeartbeatAt = LocalDateTime.MIN;
+    private static boolean backlog;
+
+    static {
+        Metrics.gauge("monitor_queue_size", "Monitored checks waiting for their time or running", "",
+                () -> QUEUED.size());
+    }
+
+    private MonitorScheduler() {
+    }
+
+    public static synchronized void startSchedule() {
+        if (!ENABLED || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("monitor-scheduler").daemon().factory());
+        scheduler.scheduleWithFixedDelay(MonitorScheduler::tick, 0, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopSchedule() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        List<Long> waiting = new ArrayList<>();
+        for (UrlSchedule schedule : DUE) {
+            QUEUED.remove(schedule.getUrlId());
+            waiting.add(schedule.getUrlId());
+        }
+        DUE.clear();
+        nextLoadAt = LocalDateTime.MIN;
+        nextHeartbeatAt = LocalDateTime.MIN;
+        backlog = false;
+        try {
+            UrlScheduleRepository.release(NODE, waiting);
+        } catch (SQLException e) {
+            LOG.warn("Could not release {} monitor leases, they expire in {} s", waiting.size(), LEASE_SECONDS, e);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    // Runs every check due at now and waits for them; the scheduled tick does the same without waiting
+    public static int runDue(LocalDateTime now) throws SQLException {
+        UrlScheduleRepository.scheduleMissing(now, INTERVAL_SECONDS, LOAD_LIMIT);
+        List<UrlSchedule> due = UrlScheduleRepository.claimDue(NODE, now, LEASE_SECONDS, LOAD_LIMIT);
+        try (var executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("monitor-run-", 0).factory())) {
+            for (UrlSchedule schedule : due) {
+                executor.execute(() -> check(schedule, now));
+            }
+        }
+        CheckWriter.flush();
+        return due.size();
+    }
+
+    private static synchronized void tick() {
+        try {
+            var now = LocalDateTime.now();
+            if (!now.isBefore(nextHeartbeatAt)) {
+                UrlScheduleRepository.extendLeases(NODE, List.copyOf(QUEUED), LEASE_SECONDS);
+                nextHeartbeatAt = now.plusSeconds(Math.max(LEASE_SECONDS / 4, 1));
+            }
+            if (!now.isBefore(nextLoadAt)) {
+                scheduleNew(now);
+                claim(now);
+                nextLoadAt = now.plusSeconds(Math.max(LOOKAHEAD_SECONDS / 2, 1));
+            } else if (backlog && QUEUED.size() < MAX_CLAIMED / 2) {
+                claim(now);
+            }
+            while (!DUE.isEmpty() && !DUE.peek().getNextCheckAt().isAfter(now) && SLOTS.tryAcquire()) {
+                var schedule = DUE.poll();
+                EXECUTOR.execute(() -> {
+                    try {
+                        check(schedule, LocalDateTime.now());
+                    } finally {
+                        QUEUED.remove(schedule.getUrlId());
+                        SLOTS.release();
+                    }
+                });
+            }
+        } catch (Exception e) {
+            LOG.error("Monitor tick failed", e);
+        }
+    }
+
+    private static void scheduleNew(LocalDateTime now) throws SQLException {
+        int scheduled = UrlScheduleRepository.scheduleMissing(now, INTERVAL_SECONDS, LOAD_LIMIT);
+        if (scheduled > 0) {
+            LOG.info("Scheduled monitoring for {} new sites", scheduled);
+        }
+    }
+
+    // Claims little at a time, so due work is shared by every node rather than taken by the first one
+    private static void claim(LocalDateTime now) throws SQLException {
+        int room = MAX_CLAIMED - QUEUED.size();
+        if (room <= 0) {
+            return;
+        }
+        var claimed = UrlScheduleRepository.claimDue(NODE, now.plusSeconds(LOOKAHEAD_SECONDS), LEASE_SECONDS, room);
+        backlog = claimed.size() == room;
+        for (UrlSchedule schedule : claimed) {
+            if (QUEUED.add(schedule.getUrlId())) {
+                DUE.add(schedule);
+            }
+        }
+    }
+
+    private static void check(UrlSchedule schedule, LocalDateTime now) {
+        CHECKS.increment();
+        try {
+            var previous = UrlCheckRepository.findLatestCompletedByUrlId(schedule.getUrlId()).orElse(null);
+            var check = new UrlCheck(schedule.getUrlId(), null, null, null, null, now);
+            UrlCheckService.fetch(check, schedule.getUrlName(), previous, HOST_WAIT_MS);
+            // A refusal is only counted in checks_total: the site was never asked, so there is nothing to store
+            if (!check.isRejected()) {
+                CheckWriter.enqueue(check);
+            }
+            reschedule(schedule, check, now);
+            if (!UrlScheduleRepository.complete(schedule, NODE)) {
+                LEASES_LOST.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // The schedule stays due and is claimed again once its lease expires
+            LOG.warn("Monitored check of {} could not be stored", schedule.getUrlName(), e);
+        }
+    }
+
+    // A check refused by HostGuard says nothing about the site, so it keeps the interval and last outcome
+    private static void reschedule(UrlSchedule schedule, UrlCheck check, LocalDateTime now) {
+        if (!check.isRejected()) {
+            adapt(schedule, check);
+        }
+        // Jitter keeps sites that were added together from staying in lockstep
+        double spread = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        schedule.setNextCheckAt(now.plusNanos((long) (schedule.getIntervalSeconds() * spread * 1e9)));
+    }
+
+    private static void adapt(UrlSchedule schedule, UrlCheck check) {
+        boolean failed = check.getStatus() == CheckStatus.FAILED;
+        if (schedule.getLastFailed() != null) {
+            boolean same = schedule.getLastFailed() == failed
+                    && Objects.equals(schedule.getLastStatusCode(), check.getStatusCode());
+            if (!same) {
+                schedule.setIntervalSeconds(Math.max(schedule.getIntervalSeconds() / 2, MIN_INTERVAL_SECONDS));
+                schedule.setStableChecks(0);
+            } else if (schedule.getStableChecks() + 1 >= STABLE_CHECKS) {
+                schedule.setIntervalSeconds(Math.min(schedule.getIntervalSeconds() * 2, MAX_INTERVAL_SECONDS));
+                schedule.setStableChecks(0);
+            } else {
+                schedule.setStableChecks(schedule.getStableChecks() + 1);
+            }
+        }
+        schedule.setLastFailed(failed);
+        schedule.setLastStatusCode(check.getStatusCode());
+    }
+}
@@ -0,0 +1,198 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Histogram;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.util.Env;
+import hexlet.code.util.LimitedInputStream;
+import kong.unirest.HttpResponse;
+import kong.unirest.RawResponse;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Fetches a page for a check, following redirects itself and reading the body as sent,
+// so the check can record how long each phase took, how many bytes came over the wire,
+// how large the page is once decoded, and where the redirects led. Every hop goes through HostGuard,
+// so a redirect cannot lead a check past the rate limit or open circuit of the host it lands on.
+final class PageFetcher {
+    private static final int NOT_MODIFIED = 304;
+    private static final int SERVER_ERROR = 500;
+    // The size of url_checks.final_url
+    private static final int MAX_URL_LENGTH = 2048;
+    private static final Set<Integer> REDIRECTS = Set.of(301, 302, 303, 307, 308);
+    private static final boolean FOLLOW_REDIRECTS = Env.getBoolean("CHECK_FOLLOW_REDIRECTS", true);
+    private static final int MAX_REDIRECTS = Env.getInt("CHECK_MAX_REDIRECTS", 10);
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final Histogram PARSE_TIMER = Metrics.histogram("check_parse_seconds",
+            "Time spent reading and parsing a fetched page", "");
+
+    private PageFetcher() {
+    }
+
+    // HostGuard refused one of the requests, so the site itself was never asked
+    static final class HostRefusedException extends RuntimeException {
+        HostRefusedException(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    // What one request of a redirect chain saw, filled in while its response is read
+    private static final class Hop {
+        private long firstByteAt;
+        private String location;
+        private Long transferBytes;
+        private Long contentBytes;
+    }
+
+    // Sets the timings, sizes and redirects of the check; the response is the last one of the chain.
+    // Time spent waiting for HostGuard is left out of the timings.
+    static HttpResponse<PageInfo> fetch(String urlName, UrlCheck previous, UrlCheck check, long maxHostWaitMs)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long waited = 0;
+        var timings = ConnectionTimings.start();
+        try {
+            String url = urlName;
+            int redirects = 0;
+            while (true) {
+                String host = HostGuard.hostOf(url);
+                long waitStart = System.nanoTime();
+                String rejection = HostGuard.acquire(host, maxHostWaitMs);
+                waited += System.nanoTime() - waitStart;
+                if (rejection != null) {
+                    throw new HostRefusedException(rejection);
+                }
+                var hop = new Hop();
+                boolean follow = FOLLOW_REDIRECTS && redirects < MAX_REDIRECTS;
+                HttpResponse<PageInfo> response;
+                try {
+                    response = request(url, previous, hop, follow);
+                } catch (RuntimeException e) {
+                    HostGuard.recordResult(host, false);
+                    throw e;
+                }
+                HostGuard.recordResult(host, response.getStatus() < SERVER_ERROR);
+                if (hop.location != null) {
+                    url = hop.location;
+                    redirects++;
+                    continue;
+                }
+                check.setDnsMillis(timings.getDnsMillis());
+                check.setConnectMillis(timings.getConnectMillis());
+                check.setTtfbMillis(ConnectionTimings.toMillis(hop.firstByteAt - start - waited));
+                check.setTotalMillis(ConnectionTimings.toMillis(System.nanoTime() - start - waited));
+                check.setTransferBytes(hop.transferBytes);
+                check.setContentBytes(hop.contentBytes);
+                check.setRedirects(redirects);
+                check.setFinalUrl(url.length() > MAX_URL_LENGTH ? url.substring(0, MAX_URL_LENGTH) : url);
+                return response;
+            }
+        } finally {
+            ConnectionTimings.stop();
+        }
+    }
+
+    private static HttpResponse<PageInfo> request(String url, UrlCheck previous, Hop hop, boolean follow) {
+        var request = FetchClient.get().get(url).header("Accept-Encoding", ACCEPT_ENCODING);
+        if (previous != null && previous.getEtag() != null) {
+            request.header("If-None-Match", previous.getEtag());
+        }
+        if (previous != null && previous.getLastModified() != null) {
+            request.header("If-Modified-Since", previous.getLastModified());
+        }
+        return request.asObject(raw -> {
+            hop.firstByteAt = System.nanoTime();
+            if (raw.getStatus() == NOT_MODIFIED) {
+                hop.transferBytes = 0L;
+                return null;
+            }
+            if (follow && REDIRECTS.contains(raw.getStatus())) {
+                hop.location = redirectTarget(url, raw);
+                if (hop.location != null) {
+                    return null;
+                }
+            }
+            return parse(raw, hop);
+        });
+    }
+
+    private static PageInfo parse(RawResponse raw, Hop hop) {
+        long parseStart = System.nanoTime();
+        var wire = new LimitedInputStream(raw.getContent(), Long.MAX_VALUE);
+        String encoding = raw.getHeaders().getFirst("Content-Encoding");
+        LimitedInputStream content = null;
+        boolean complete = false;
+        try {
+            content = new LimitedInputStream(decode(wire, encoding), Long.MAX_VALUE);
+            var page = PageParser.parse(content, raw.getContentType(), PageParser.MAX_BODY_BYTES, true);
+            complete = content.read() == -1;
+            return page;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (complete) {
+                hop.transferBytes = wire.getCount();
+                hop.contentBytes = content.getCount();
+            } else {
+                // The parser stopped before the end and the rest is never read, so only the declared length is known
+                hop.transferBytes = declaredLength(raw);
+                hop.contentBytes = encoding == null || encoding.isBlank() ? hop.transferBytes : null;
+            }
+            PARSE_TIMER.observeNanos(System.nanoTime() - parseStart);
+        }
+    }
+
+    private static Long declaredLength(RawResponse raw) {
+        var length = raw.getHeaders().getFirst("Content-Length");
+        if (length == null || length.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(length.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String redirectTarget(String url, RawResponse raw) {
+        var location = raw.getHeaders().getFirst("Location");
+        if (location == null || location.isBlank()) {
+            return null;
+        }
+        try {
+            return URI.create(url).resolve(location.trim()).toString();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Goes by the magic bytes as well as the header, so a body that is not actually compressed is read as is
+    private static InputStream decode(InputStream body, String encoding) throws IOException {
+        if (encoding == null || encoding.isBlank()) {
+            return body;
+        }
+        var input = new BufferedInputStream(body);
+        input.mark(2);
+        int first = input.read();
+        int second = input.read();
+        input.reset();
+        String name = encoding.trim().toLowerCase();
+        if ((name.equals("gzip") || name.equals("x-gzip")) && first == 0x1f && second == 0x8b) {
+            return new GZIPInputStream(input);
+        }
+        if (name.equals("deflate") && first != -1) {
+            boolean zlibWrapped = (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0;
+            return new InflaterInputStream(input, new Inflater(!zlibWrapped));
+        }
+        return input;
+    }
+}
@@ -0,0 +1,13 @@
+package hexlet.code.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public final class PageInfo {
+    private final String title;
+    private final String h1;
+    private final String description;
+    private final String bodyHash;
+}
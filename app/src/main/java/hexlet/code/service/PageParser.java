@@ -0,0 +1,136 @@
+package hexlet.code.service;
+
+import hexlet.code.util.Env;
+import hexlet.code.util.LimitedInputStream;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class PageParser {
+    public static final int MAX_BODY_BYTES = Env.getInt("CHECK_MAX_BODY_BYTES", 2 * 1024 * 1024);
+
+    private static final int SNIFF_BYTES = 1024;
+    private static final Pattern CHARSET = Pattern.compile("charset\\s*=\\s*[\"']?([\\w.:-]+)",
+            Pattern.CASE_INSENSITIVE);
+
+    private PageParser() {
+    }
+
+    public static PageInfo parse(InputStream body, String contentType, int maxBytes) throws IOException {
+        return parse(body, contentType, maxBytes, false);
+    }
+
+    // The hash covers only the bytes read until extraction stopped: everything a check stores comes from them
+    public static PageInfo parse(InputStream body, String contentType, int maxBytes, boolean hash)
+            throws IOException {
+        var limited = new LimitedInputStream(body, maxBytes);
+        var digest = hash ? new DigestInputStream(limited, sha256()) : null;
+        var input = new BufferedInputStream(digest != null ? digest : limited, SNIFF_BYTES * 8);
+        var reader = new InputStreamReader(input, detectCharset(input, contentType));
+
+        String title = null;
+        String h1 = null;
+        String description = null;
+        try (var streamer = new StreamParser(Parser.htmlParser()).parse(reader, "")) {
+            var elements = streamer.iterator();
+            while ((title == null || h1 == null || description == null) && elements.hasNext()) {
+                Element element = elements.next();
+                String name = element.normalName();
+                if (title == null && name.equals("title") && isInHead(element)) {
+                    title = element.text();
+                } else if (h1 == null && name.equals("h1")) {
+                    h1 = element.text();
+                } else if (description == null && name.equals("meta")
+                        && element.attr("name").equalsIgnoreCase("description")) {
+                    description = element.attr("content");
+                }
+                // Completed elements are dropped so the tree never holds more than the open path
+                if (!hasCapturingAncestor(element)) {
+                    element.remove();
+                }
+            }
+            streamer.stop();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        String bodyHash = digest != null ? HexFormat.of().formatHex(digest.getMessageDigest().digest()) : null;
+        return new PageInfo(title != null ? title : "", h1, description, bodyHash);
+    }
+
+    public static PageInfo parseDocument(String html) {
+        Document doc = Jsoup.parse(html);
+        Element h1Element = doc.selectFirst("h1");
+        Element descElement = doc.selectFirst("meta[name=description]");
+        return new PageInfo(
+                doc.title(),
+                h1Element != null ? h1Element.text() : null,
+                descElement != null ? descElement.attr("content") : null,
+                null);
+    }
+
+    static Charset charsetOf(String text) {
+        if (text == null) {
+            return null;
+        }
+        Matcher matcher = CHARSET.matcher(text);
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            return Charset.forName(matcher.group(1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Charset detectCharset(BufferedInputStream input, String contentType) throws IOException {
+        var fromHeader = charsetOf(contentType);
+        if (fromHeader != null) {
+            return fromHeader;
+        }
+        input.mark(SNIFF_BYTES);
+        byte[] head = input.readNBytes(SNIFF_BYTES);
+        input.reset();
+        var fromMeta = charsetOf(new String(head, StandardCharsets.ISO_8859_1));
+        return fromMeta != null ? fromMeta : StandardCharsets.UTF_8;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isInHead(Element element) {
+        var parent = element.parent();
+        return parent != null && parent.normalName().equals("head");
+    }
+
+    private static boolean hasCapturingAncestor(Element element) {
+        for (var parent = element.parent(); parent != null; parent = parent.parent()) {
+            var name = parent.normalName();
+            if (name.equals("h1") || name.equals("title")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,85 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Metrics;
+import hexlet.code.model.UrlLatency;
+import hexlet.code.repository.JobLeaseRepository;
+import hexlet.code.repository.UrlCheckDailyRepository;
+import hexlet.code.repository.UrlLatencyRepository;
+import hexlet.code.util.Env;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class RetentionJob {
+    private static final Logger LOG = LoggerFactory.getLogger(RetentionJob.class);
+
+    private static final long RETENTION_DAYS = Env.getLong("CHECK_RETENTION_DAYS", 90);
+    private static final int BATCH_SIZE = Env.getInt("CHECK_RETENTION_BATCH_SIZE", 500);
+    private static final long INTERVAL_MINUTES = Env.getLong("CHECK_RETENTION_INTERVAL_MINUTES", 60);
+    // Daily latency rows are kept, hourly ones only serve the recent charts
+    private static final long HOURLY_LATENCY_DAYS = Env.getLong("LATENCY_HOURLY_RETENTION_DAYS", 14);
+    private static final String LEASE = "retention";
+
+    private static final LongAdder ROLLED_UP = Metrics.counter("check_retention_rolled_up_total",
+            "Checks folded into daily summaries and deleted", "");
+
+    private static ScheduledExecutorService scheduler;
+
+    private RetentionJob() {
+    }
+
+    public static synchronized void startSchedule() {
+        if (RETENTION_DAYS <= 0 || INTERVAL_MINUTES <= 0 || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("check-retention").daemon().factory());
+        scheduler.scheduleWithFixedDelay(RetentionJob::runScheduled, INTERVAL_MINUTES, INTERVAL_MINUTES,
+                TimeUnit.MINUTES);
+    }
+
+    public static synchronized void stopSchedule() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // Each batch commits on its own so writers are never blocked for longer than one batch
+    public static long run(LocalDateTime cutoff, int batchSize) throws SQLException {
+        long total = 0;
+        int rolledUp;
+        do {
+            rolledUp = UrlCheckDailyRepository.rollUp(cutoff, batchSize);
+            total += rolledUp;
+            ROLLED_UP.add(rolledUp);
+        } while (rolledUp == batchSize && !Thread.currentThread().isInterrupted());
+        return total;
+    }
+
+    // Only the node holding the lease runs; it keeps the lease for one interval, so as long as a run is shorter
+    // than that no two nodes roll up the same checks and each interval is still covered if the holder dies
+    private static void runScheduled() {
+        try {
+            if (!JobLeaseRepository.tryAcquire(LEASE, MonitorScheduler.NODE, (int) (INTERVAL_MINUTES * 60))) {
+                return;
+            }
+            long total = run(LocalDateTime.now().minusDays(RETENTION_DAYS), BATCH_SIZE);
+            if (total > 0) {
+                LOG.info("Rolled up {} checks older than {} days", total, RETENTION_DAYS);
+            }
+            if (HOURLY_LATENCY_DAYS > 0) {
+                UrlLatencyRepository.deleteBefore(UrlLatency.Period.HOUR,
+                        LocalDateTime.now().minusDays(HOURLY_LATENCY_DAYS));
+            }
+        } catch (Exception e) {
+            LOG.error("Check retention failed", e);
+        }
+    }
+}
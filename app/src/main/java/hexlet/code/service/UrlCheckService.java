@@ -0,0 +1,241 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Histogram;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.util.Env;
+import kong.unirest.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.SSLException;
+
+public final class UrlCheckService {
+    private static final Logger LOG = LoggerFactory.getLogger(UrlCheckService.class);
+
+    private static final int NOT_MODIFIED = 304;
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private static final int WORKERS = Env.getInt("CHECK_WORKERS", 16);
+    private static final int QUEUE_CAPACITY = Env.getInt("CHECK_QUEUE_CAPACITY", 256);
+    // A check still QUEUED or RUNNING after this long is lost: its node stopped, its task never ran or its result
+    // could not be written. Far above the longest fetch, so the sweep never fails a check another node still runs.
+    public static final Duration STALE_AFTER = Duration.ofSeconds(Env.getLong("CHECK_STALE_AFTER_SECONDS", 600));
+    private static final long STALE_SWEEP_SECONDS = Env.getLong("CHECK_STALE_SWEEP_SECONDS", 60);
+    private static final String STALE_ERROR = "Проверка не завершилась";
+
+    // Admission limits how many checks may be queued or running at once, workers limits how many fetch in parallel.
+    private static final Semaphore ADMISSION = new Semaphore(WORKERS + QUEUE_CAPACITY);
+    private static final Semaphore WORKER_SLOTS = new Semaphore(WORKERS);
+    private static final ExecutorService EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("url-check-", 0).factory());
+
+    private static final Histogram FETCH_TIMER = Metrics.histogram("check_fetch_seconds",
+            "Outbound request time of a check including body parsing", "");
+    private static final LongAdder CHECKS_DONE = checksCounter("done");
+    private static final LongAdder CHECKS_UNCHANGED = checksCounter("unchanged");
+    private static final LongAdder CHECKS_FAILED = checksCounter("failed");
+    private static final LongAdder CHECKS_REJECTED = checksCounter("rejected");
+    private static final LongAdder CHECKS_STALE = checksCounter("stale");
+
+    private static ScheduledExecutorService staleSweeper;
+
+    private UrlCheckService() {
+    }
+
+    // The first sweep runs right away, so checks orphaned by the previous run are failed on startup
+    public static synchronized void startSchedule() {
+        if (STALE_SWEEP_SECONDS <= 0 || staleSweeper != null) {
+            return;
+        }
+        staleSweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("check-stale-sweep").daemon().factory());
+        staleSweeper.scheduleWithFixedDelay(UrlCheckService::runStaleSweep, 0, STALE_SWEEP_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopSchedule() {
+        if (staleSweeper != null) {
+            staleSweeper.shutdownNow();
+            staleSweeper = null;
+        }
+    }
+
+    public static int failStale(LocalDateTime now) throws SQLException {
+        int failed = UrlCheckRepository.failStale(now.minus(STALE_AFTER), STALE_ERROR);
+        CHECKS_STALE.add(failed);
+        return failed;
+    }
+
+    public static Optional<UrlCheck> submit(Url url) throws SQLException {
+        if (!ADMISSION.tryAcquire()) {
+            return Optional.empty();
+        }
+        try {
+            var check = new UrlCheck(url.getId(), null, null, null, null, LocalDateTime.now());
+            check.setStatus(CheckStatus.QUEUED);
+            UrlCheckRepository.save(check);
+            try {
+                EXECUTOR.execute(() -> runQueued(check, url.getName()));
+            } catch (RuntimeException e) {
+                fail(check, "Проверка не была запущена");
+                UrlCheckRepository.update(check);
+                throw e;
+            }
+            return Optional.of(check);
+        } catch (SQLException | RuntimeException e) {
+            ADMISSION.release();
+            throw e;
+        }
+    }
+
+    private static void runStaleSweep() {
+        try {
+            int failed = failStale(LocalDateTime.now());
+            if (failed > 0) {
+                LOG.info("Failed {} checks that did not finish within {}", failed, STALE_AFTER);
+            }
+        } catch (Exception e) {
+            LOG.error("Stale check sweep failed", e);
+        }
+    }
+
+    private static void runQueued(UrlCheck check, String urlName) {
+        try {
+            WORKER_SLOTS.acquire();
+            try {
+                UrlCheckRepository.updateStatus(check, CheckStatus.RUNNING);
+                var previous = UrlCheckRepository.findLatestCompletedByUrlId(check.getUrlId());
+                fetch(check, urlName, previous.orElse(null), 0);
+                // Unlike monitored and batch checks a refused one is stored, since the user waits for its row
+                CheckWriter.enqueue(check);
+            } finally {
+                WORKER_SLOTS.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOG.warn("Check {} for {} could not be stored", check.getId(), urlName, e);
+        } finally {
+            ADMISSION.release();
+        }
+    }
+
+    static void fetch(UrlCheck check, String urlName, UrlCheck previous, long maxHostWaitMs) {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<PageInfo> response;
+            try {
+                response = PageFetcher.fetch(urlName, previous, check, maxHostWaitMs);
+            } catch (PageFetcher.HostRefusedException e) {
+                fail(check, e.getMessage());
+                check.setRejected(true);
+                CHECKS_REJECTED.increment();
+                return;
+            }
+
+            check.setEtag(headerOrNull(response, "ETag"));
+            check.setLastModified(headerOrNull(response, "Last-Modified"));
+            check.setStatus(CheckStatus.DONE);
+
+            if (response.getStatus() == NOT_MODIFIED && previous != null) {
+                copyUnchanged(check, previous);
+                return;
+            }
+            PageInfo page = response.getBody();
+            if (page == null) {
+                throw new IllegalStateException("Не удалось прочитать ответ сервера");
+            }
+            check.setBodyHash(page.getBodyHash());
+            if (previous != null && page.getBodyHash().equals(previous.getBodyHash())
+                    && Objects.equals(previous.getStatusCode(), response.getStatus())) {
+                copyUnchanged(check, previous);
+                return;
+            }
+            check.setStatusCode(response.getStatus());
+            check.setTitle(page.getTitle());
+            check.setH1(page.getH1());
+            check.setDescription(page.getDescription());
+            CHECKS_DONE.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(check, "Проверка прервана");
+            CHECKS_FAILED.increment();
+        } catch (Exception e) {
+            LOG.info("Check of {} failed: {}", urlName, e.getMessage());
+            fail(check, describe(e));
+            CHECKS_FAILED.increment();
+        } finally {
+            FETCH_TIMER.observeNanos(System.nanoTime() - start);
+        }
+    }
+
+    private static void fail(UrlCheck check, String reason) {
+        check.setStatus(CheckStatus.FAILED);
+        check.setError(reason.length() > MAX_ERROR_LENGTH ? reason.substring(0, MAX_ERROR_LENGTH) : reason);
+    }
+
+    private static String describe(Exception e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof UnknownHostException) {
+            return "Не удалось найти хост";
+        }
+        if (cause instanceof InterruptedIOException) {
+            return "Превышено время ожидания ответа";
+        }
+        if (cause instanceof ConnectException) {
+            return "Не удалось подключиться к серверу";
+        }
+        if (cause instanceof SSLException) {
+            return "Ошибка защищённого соединения";
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    private static void copyUnchanged(UrlCheck check, UrlCheck previous) {
+        check.setStatusCode(previous.getStatusCode());
+        check.setTitle(previous.getTitle());
+        check.setH1(previous.getH1());
+        check.setDescription(previous.getDescription());
+        check.setBodyHash(previous.getBodyHash());
+        if (check.getContentBytes() == null) {
+            check.setContentBytes(previous.getContentBytes());
+        }
+        if (check.getEtag() == null) {
+            check.setEtag(previous.getEtag());
+        }
+        if (check.getLastModified() == null) {
+            check.setLastModified(previous.getLastModified());
+        }
+        check.setUnchanged(true);
+        CHECKS_UNCHANGED.increment();
+    }
+
+    private static LongAdder checksCounter(String result) {
+        return Metrics.counter("checks_total", "Completed site checks by result", "result=\"" + result + "\"");
+    }
+
+    private static String headerOrNull(HttpResponse<?> response, String name) {
+        var value = response.getHeaders().getFirst(name);
+        return value == null || value.isBlank() ? null : value;
+    }
+}
@@ -0,0 +1,59 @@
+package hexlet.code.service;
+
+import hexlet.code.dto.UrlImportResult;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.util.Env;
+import hexlet.code.util.UrlNormalizer;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class UrlImportService {
+    public static final int MAX_URLS = Env.getInt("API_IMPORT_MAX_URLS", 10_000);
+
+    private static final int BATCH_SIZE = Env.getInt("API_IMPORT_BATCH_SIZE", 500);
+
+    private static final LongAdder CREATED = importedCounter("created");
+    private static final LongAdder DUPLICATES = importedCounter("duplicate");
+    private static final LongAdder INVALID = importedCounter("invalid");
+
+    private UrlImportService() {
+    }
+
+    // Uses the same normalization as the form, so "https://www.Example.com/page" and "https://example.com"
+    // count as one site; each batch commits on its own
+    public static UrlImportResult importUrls(List<String> inputs) throws SQLException {
+        Set<String> names = new LinkedHashSet<>();
+        List<String> invalid = new ArrayList<>();
+        for (String input : inputs) {
+            var normalized = input != null ? UrlNormalizer.normalize(input).orElse(null) : null;
+            if (normalized != null) {
+                names.add(normalized);
+            } else {
+                invalid.add(input);
+            }
+        }
+
+        int created = 0;
+        List<String> unique = new ArrayList<>(names);
+        for (int from = 0; from < unique.size(); from += BATCH_SIZE) {
+            created += UrlRepository.saveAllIfAbsent(unique.subList(from, Math.min(from + BATCH_SIZE, unique.size())));
+        }
+        int duplicates = inputs.size() - invalid.size() - created;
+
+        CREATED.add(created);
+        DUPLICATES.add(duplicates);
+        INVALID.add(invalid.size());
+        return new UrlImportResult(inputs.size(), created, duplicates, invalid);
+    }
+
+    private static LongAdder importedCounter(String result) {
+        return Metrics.counter("url_imports_total", "Urls received by the bulk import API by result",
+                "result=\"" + result + "\"");
+    }
+}
@@ -0,0 +1,24 @@
+package hexlet.code.util;
+
+import java.util.Locale;
+
+public final class Bytes {
+    private static final double KIB = 1024;
+    private static final double MIB = 1024 * 1024;
+
+    private Bytes() {
+    }
+
+    public static String format(Long bytes) {
+        if (bytes == null) {
+            return "";
+        }
+        if (bytes < KIB) {
+            return bytes + " Б";
+        }
+        if (bytes < MIB) {
+            return String.format(Locale.ROOT, "%.1f КБ", bytes / KIB);
+        }
+        return String.format(Locale.ROOT, "%.1f МБ", bytes / MIB);
+    }
+}
@@ -0,0 +1,34 @@
+package hexlet.code.util;
+
+import gg.jte.TemplateEngine;
+import gg.jte.output.WriterOutput;
+import io.javalin.http.Context;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Renders a template straight into the response instead of buffering it like ctx.render,
+// so a page backed by a cursor is sent while its rows are still being read
+public final class StreamingRenderer {
+    private static final int BUFFER_CHARS = 8 * 1024;
+
+    private static volatile TemplateEngine engine;
+
+    private StreamingRenderer() {
+    }
+
+    public static void init(TemplateEngine templateEngine) {
+        engine = templateEngine;
+    }
+
+    public static void render(Context ctx, String template, Map<String, Object> model) throws IOException {
+        ctx.contentType("text/html; charset=utf-8");
+        var writer = new BufferedWriter(new OutputStreamWriter(ctx.outputStream(), StandardCharsets.UTF_8),
+                BUFFER_CHARS);
+        engine.render(template, model, new WriterOutput(writer));
+        writer.flush();
+    }
+}
@@ -0,0 +1,37 @@
+package hexlet.code.util;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Optional;
+
+public final class UrlNormalizer {
+    private UrlNormalizer() {
+    }
+
+    // Keeps only scheme, host without "www." and an explicit port; empty for anything that is not an absolute URL
+    public static Optional<String> normalize(String input) {
+        URL url;
+        try {
+            var uri = new URI(input.trim());
+            if (!uri.isAbsolute()) {
+                return Optional.empty();
+            }
+            url = uri.toURL();
+        } catch (URISyntaxException | MalformedURLException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+
+        String host = url.getHost();
+        if (host == null || host.isEmpty()) {
+            return Optional.empty();
+        }
+        host = host.toLowerCase();
+        if (host.startsWith("www.")) {
+            host = host.substring(4);
+        }
+        int port = url.getPort();
+        return Optional.of(url.getProtocol().toLowerCase() + "://" + host + (port != -1 ? ":" + port : ""));
+    }
+}
@@ -0,0 +1 @@
+CREATE INDEX IF NOT EXISTS url_checks_status_created_at_idx ON url_checks (status, created_at);
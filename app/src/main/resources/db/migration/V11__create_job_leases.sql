@@ -0,0 +1,7 @@
+CREATE TABLE IF NOT EXISTS job_leases (
+    name VARCHAR(64) PRIMARY KEY,
+    node VARCHAR(255),
+    lease_until TIMESTAMP NOT NULL
+);
+
+INSERT INTO job_leases (name, lease_until) VALUES ('retention', TIMESTAMP '1970-01-01 00:00:00');
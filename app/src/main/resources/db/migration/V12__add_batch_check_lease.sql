@@ -0,0 +1 @@
+INSERT INTO job_leases (name, lease_until) VALUES ('batch_check', TIMESTAMP '1970-01-01 00:00:00');
@@ -1,19 +1,23 @@
-DROP TABLE IF EXISTS url_checks;
-DROP TABLE IF EXISTS urls;
-
 CREATE TABLE IF NOT EXISTS urls (
-    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     name VARCHAR(255) NOT NULL,
     created_at TIMESTAMP NOT NULL
 );
 
+CREATE UNIQUE INDEX IF NOT EXISTS urls_name_key ON urls (name);
+
 CREATE TABLE IF NOT EXISTS url_checks (
-    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     url_id BIGINT NOT NULL,
     status_code INTEGER,
     title VARCHAR(255),
     h1 VARCHAR(255),
     description TEXT,
     created_at TIMESTAMP,
+    status VARCHAR(16) NOT NULL DEFAULT 'DONE',
+    etag VARCHAR(255),
+    last_modified VARCHAR(64),
+    body_hash VARCHAR(64),
+    unchanged BOOLEAN NOT NULL DEFAULT FALSE,
     CONSTRAINT fk_url_checks_urls FOREIGN KEY (url_id) REFERENCES urls(id) ON DELETE CASCADE
 );
@@ -0,0 +1 @@
+CREATE INDEX IF NOT EXISTS url_checks_url_id_created_at_idx ON url_checks (url_id, created_at DESC, id DESC);
@@ -0,0 +1,16 @@
+CREATE TABLE IF NOT EXISTS url_check_daily (
+    url_id BIGINT NOT NULL,
+    check_date DATE NOT NULL,
+    checks INTEGER NOT NULL,
+    failed INTEGER NOT NULL,
+    status_2xx INTEGER NOT NULL,
+    status_3xx INTEGER NOT NULL,
+    status_4xx INTEGER NOT NULL,
+    status_5xx INTEGER NOT NULL,
+    title_changes INTEGER NOT NULL,
+    last_title VARCHAR(255),
+    PRIMARY KEY (url_id, check_date),
+    CONSTRAINT fk_url_check_daily_urls FOREIGN KEY (url_id) REFERENCES urls(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS url_checks_created_at_idx ON url_checks (created_at);
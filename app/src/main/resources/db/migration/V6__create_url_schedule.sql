@@ -0,0 +1,11 @@
+CREATE TABLE IF NOT EXISTS url_schedule (
+    url_id BIGINT PRIMARY KEY,
+    next_check_at TIMESTAMP NOT NULL,
+    interval_seconds INTEGER NOT NULL,
+    stable_checks INTEGER NOT NULL DEFAULT 0,
+    last_status_code INTEGER,
+    last_failed BOOLEAN,
+    CONSTRAINT fk_url_schedule_urls FOREIGN KEY (url_id) REFERENCES urls(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS url_schedule_next_check_at_idx ON url_schedule (next_check_at);
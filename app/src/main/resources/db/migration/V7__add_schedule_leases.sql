@@ -0,0 +1,2 @@
+ALTER TABLE url_schedule ADD COLUMN IF NOT EXISTS leased_by VARCHAR(255);
+ALTER TABLE url_schedule ADD COLUMN IF NOT EXISTS lease_until TIMESTAMP;
@@ -0,0 +1,8 @@
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS dns_ms INTEGER;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS connect_ms INTEGER;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS ttfb_ms INTEGER;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS total_ms INTEGER;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS transfer_bytes BIGINT;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS content_bytes BIGINT;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS redirects INTEGER;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS final_url VARCHAR(2048);
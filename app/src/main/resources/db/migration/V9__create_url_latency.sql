@@ -0,0 +1,13 @@
+CREATE TABLE IF NOT EXISTS url_latency (
+    url_id BIGINT NOT NULL,
+    resolution VARCHAR(8) NOT NULL,
+    period_start TIMESTAMP NOT NULL,
+    checks BIGINT NOT NULL,
+    total_ms BIGINT NOT NULL,
+    max_ms INTEGER NOT NULL,
+    sketch VARCHAR(8192) NOT NULL,
+    PRIMARY KEY (url_id, resolution, period_start),
+    CONSTRAINT fk_url_latency_urls FOREIGN KEY (url_id) REFERENCES urls(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS url_latency_period_start_idx ON url_latency (resolution, period_start);
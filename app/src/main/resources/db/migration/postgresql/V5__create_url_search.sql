@@ -0,0 +1,44 @@
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE TABLE IF NOT EXISTS url_search (
+    url_id BIGINT PRIMARY KEY,
+    name_text TEXT NOT NULL,
+    check_text TEXT NOT NULL DEFAULT '',
+    CONSTRAINT fk_url_search_urls FOREIGN KEY (url_id) REFERENCES urls(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS url_search_name_trgm_idx ON url_search USING gin (name_text gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS url_search_check_trgm_idx ON url_search USING gin (check_text gin_trgm_ops);
+
+INSERT INTO url_search (url_id, name_text, check_text)
+SELECT u.id, LOWER(u.name), COALESCE(LOWER(CONCAT_WS(' ', c.title, c.h1, c.description)), '')
+FROM urls u
+LEFT JOIN LATERAL (
+    SELECT uc.title, uc.h1, uc.description FROM url_checks uc
+    WHERE uc.url_id = u.id AND uc.status = 'DONE'
+    ORDER BY uc.created_at DESC, uc.id DESC LIMIT 1
+) c ON TRUE
+ON CONFLICT (url_id) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION url_search_add_url() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO url_search (url_id, name_text) VALUES (NEW.id, LOWER(NEW.name))
+    ON CONFLICT (url_id) DO UPDATE SET name_text = EXCLUDED.name_text;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER url_search_add_url AFTER INSERT ON urls
+FOR EACH ROW EXECUTE FUNCTION url_search_add_url();
+
+CREATE OR REPLACE FUNCTION url_search_add_check() RETURNS trigger AS $$
+BEGIN
+    UPDATE url_search SET check_text = LOWER(CONCAT_WS(' ', NEW.title, NEW.h1, NEW.description))
+    WHERE url_id = NEW.url_id;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER url_search_add_check AFTER INSERT OR UPDATE OF status ON url_checks
+FOR EACH ROW WHEN (NEW.status = 'DONE' AND NOT NEW.unchanged)
+EXECUTE FUNCTION url_search_add_check();
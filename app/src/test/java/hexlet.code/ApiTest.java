@@ -0,0 +1,149 @@
+package hexlet.code;
+
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlLatency;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlLatencyRepository;
+import hexlet.code.repository.UrlRepository;
+import io.javalin.testtools.JavalinTest;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ApiTest extends BaseAppTest {
+    @Test
+    void testListAndShow() {
+        JavalinTest.test(app, (server, client) -> {
+            var list = client.get("/api/urls?limit=10");
+            assertThat(list.code()).isEqualTo(200);
+            assertThat(list.body().string())
+                    .contains("\"name\":\"" + existingUrl.getName() + "\"")
+                    .contains("\"nextCursor\":null");
+
+            var show = client.get("/api/urls/" + existingUrl.getId()).body().string();
+            assertThat(show)
+                    .contains("\"title\":\"en title\"")
+                    .contains("\"status\":\"DONE\"")
+                    .doesNotContain("bodyHash")
+                    .doesNotContain("etag")
+                    .doesNotContain("rejected");
+
+            assertThat(client.get("/api/urls/999999").code()).isEqualTo(404);
+            assertThat(client.get("/api/urls/abc").code()).isEqualTo(400);
+        });
+    }
+
+    @Test
+    void testCreate() {
+        JavalinTest.test(app, (server, client) -> {
+            var created = client.post("/api/urls", "{\"url\": \"https://www.Api.example.com/some/page\"}");
+            assertThat(created.code()).isEqualTo(201);
+            assertThat(created.body().string()).contains("\"name\":\"https://api.example.com\"");
+
+            var duplicate = client.post("/api/urls", "{\"url\": \"https://api.example.com\"}");
+            assertThat(duplicate.code()).isEqualTo(409);
+
+            assertThat(client.post("/api/urls", "{\"url\": \"not a url\"}").code()).isEqualTo(422);
+            assertThat(client.post("/api/urls", "{broken").code()).isEqualTo(400);
+        });
+    }
+
+    @Test
+    void testLatencyAggregates() throws SQLException {
+        Url url = new Url("https://latency.example.com");
+        UrlRepository.save(url);
+        List<UrlCheck> checks = new ArrayList<>();
+        for (int millis = 1; millis <= 200; millis++) {
+            var check = new UrlCheck(url.getId(), 200, null, null, null, LocalDateTime.now());
+            check.setTotalMillis(millis);
+            checks.add(check);
+        }
+        UrlCheckRepository.saveAll(checks);
+        var untimed = new UrlCheck(url.getId(), 200, null, null, null, LocalDateTime.now());
+        UrlCheckRepository.save(untimed);
+        untimed.setTotalMillis(1000);
+        UrlCheckRepository.update(untimed);
+
+        var now = LocalDateTime.now();
+        var day = UrlLatencyRepository.summarize(url.getId(), UrlLatency.Period.DAY, now, now.plusDays(1));
+        assertThat(day.getChecks()).isEqualTo(201);
+        assertThat(day.getMaxMillis()).isEqualTo(1000);
+        assertThat(day.getP50()).isBetween(94, 107);
+        assertThat(day.getP99()).isBetween(187, 213);
+        assertThat(UrlLatencyRepository.findByUrlId(url.getId(), UrlLatency.Period.HOUR,
+                now.minusHours(1), now.plusHours(1)))
+                .extracting(UrlLatency::getChecks)
+                .containsExactly(201L);
+
+        JavalinTest.test(app, (server, client) -> {
+            var latency = client.get("/api/urls/" + url.getId() + "/latency?resolution=day").body().string();
+            assertThat(latency)
+                    .contains("\"resolution\":\"day\"")
+                    .contains("\"checks\":201")
+                    .contains("\"p95\":");
+            assertThat(client.get("/api/urls/" + url.getId() + "/latency?resolution=week").code())
+                    .isEqualTo(400);
+            assertThat(client.get("/urls/" + url.getId()).body().string())
+                    .contains("За сутки", "За 30 дней", "p99");
+        });
+    }
+
+    @Test
+    void testBulkImport() throws SQLException {
+        var body = new StringBuilder("{\"urls\": [");
+        for (int i = 0; i < 1200; i++) {
+            body.append("\"https://import").append(i).append(".example.com/path\",");
+        }
+        body.append("\"https://import0.example.com\", \"").append(existingUrl.getName()).append("\",");
+        body.append("\"invalid-url\"]}");
+
+        JavalinTest.test(app, (server, client) -> {
+            var response = client.post("/api/urls/import", body.toString());
+            assertThat(response.code()).isEqualTo(200);
+            assertThat(response.body().string())
+                    .contains("\"received\":1203")
+                    .contains("\"created\":1200")
+                    .contains("\"duplicates\":2")
+                    .contains("\"invalid\":[\"invalid-url\"]");
+        });
+        assertThat(UrlRepository.count()).isEqualTo(1201);
+        assertThat(UrlRepository.findByName("https://import1199.example.com")).isPresent();
+        assertThat(UrlRepository.saveAllIfAbsent(List.of("https://import1.example.com"))).isZero();
+    }
+
+    @Test
+    void testChecks() throws IOException {
+        try (var site = new MockWebServer()) {
+            site.enqueue(new MockResponse().setBody(readFixture("index.html")));
+            site.start();
+            String url = site.url("/").toString().replaceAll("/$", "");
+
+            JavalinTest.test(app, (server, client) -> {
+                client.post("/api/urls", "{\"url\": \"" + url + "\"}");
+                var saved = UrlRepository.findByName(url).orElseThrow();
+
+                var queued = client.post("/api/urls/" + saved.getId() + "/checks", "");
+                assertThat(queued.code()).isEqualTo(202);
+                assertThat(queued.body().string()).contains("\"status\":\"QUEUED\"");
+                assertThat(awaitLatestCheck(saved.getId()).orElseThrow().getTitle()).isEqualTo("Test page");
+
+                var checks = client.get("/api/urls/" + saved.getId() + "/checks?limit=1");
+                assertThat(checks.code()).isEqualTo(200);
+                assertThat(checks.body().string())
+                        .contains("\"title\":\"Test page\"")
+                        .contains("\"nextCursor\":null");
+                assertThat(client.post("/api/urls/999999/checks", "").code()).isEqualTo(404);
+            });
+        }
+    }
+}
+}
@@ -1,141 +1,234 @@
 package hexlet.code;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.controller.UrlController;
 import hexlet.code.model.Url;
 import hexlet.code.model.UrlCheck;
 import hexlet.code.repository.BaseRepository;
 import hexlet.code.repository.UrlCheckRepository;
 import hexlet.code.repository.UrlRepository;
-import io.javalin.Javalin;
+import hexlet.code.repository.UrlSearchRepository;
 import io.javalin.testtools.JavalinTest;
-import okhttp3.mockwebserver.MockResponse;
-import okhttp3.mockwebserver.MockWebServer;
-import org.junit.jupiter.api.AfterAll;
-import org.junit.jupiter.api.BeforeAll;
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Nested;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-public class AppTest {
-    private Javalin app;
-    private static MockWebServer mockServer;
-    private Url existingUrl;
-    private UrlCheck existingUrlCheck;
-    private HikariDataSource dataSource;
-    private static final String TEST_DATABASE_URL = "jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1;";
-
-    private static Path getFixturePath(String fileName) {
-        return Paths.get("src", "test", "resources", "fixtures", fileName)
-                .toAbsolutePath().normalize();
+public class AppTest extends BaseAppTest {
+    @Nested
+    class RootTest {
+        @Test
+        void testIndex() {
+            JavalinTest.test(app, (server, client) -> {
+                var response = client.get("/");
+                assertThat(response.code()).isEqualTo(200);
+                assertThat(response.body().string()).contains("Анализатор страниц");
+            });
+        }
     }
 
-    private static String readFixture(String fileName) throws IOException {
-        Path filePath = getFixturePath(fileName);
-        return Files.readString(filePath).trim();
+    // Startup and render times are measured by StartupBenchmark and RenderBenchmark, not asserted here
+    @Test
+    public void testFreshAppServesFirstRequest() throws SQLException {
+        var setUpPool = BaseRepository.dataSource;
+        var freshApp = App.getApp(TEST_DATABASE_URL);
+        setUpPool.close();
+        JavalinTest.test(freshApp, (server, client) -> {
+            assertThat(client.get("/urls").code()).isEqualTo(200);
+            assertThat(client.get("/metrics").body().string()).contains("app_startup_seconds");
+        });
     }
 
-    @BeforeAll
-    static void beforeAll() throws IOException {
-        mockServer = new MockWebServer();
-        MockResponse mockedResponse = new MockResponse()
-            .setBody(readFixture("index.html"));
-        mockServer.enqueue(mockedResponse);
-        mockServer.start();
-
-    }
+    @Nested
+    class MetricsTest {
+        @Test
+        void testPoolMetrics() {
+            JavalinTest.test(app, (server, client) -> {
+                client.get("/urls");
+                var response = client.get("/metrics");
+                assertThat(response.code()).isEqualTo(200);
+                assertThat(response.body().string())
+                        .contains("db_pool_active_connections{pool=\"app-pool\"}")
+                        .contains("db_pool_idle_connections")
+                        .contains("db_pool_pending_threads")
+                        .contains("db_pool_acquire_seconds_count{pool=\"app-pool\"}");
+            });
+        }
 
-    @AfterAll
-    public static void afterAll() throws IOException {
-        mockServer.shutdown();
+        @Test
+        void testRequestAndQueryMetrics() {
+            JavalinTest.test(app, (server, client) -> {
+                client.get("/urls");
+                client.get("/urls/" + existingUrl.getId());
+                var body = client.get("/metrics").body().string();
+                assertThat(body)
+                        .contains("# TYPE http_request_duration_seconds histogram")
+                        .contains("http_request_duration_seconds_count{method=\"GET\",route=\"/urls\"}")
+                        .contains("route=\"/urls/{id}\"")
+                        .contains("db_query_seconds_count{repository=\"url\",method=\"findPage\"}")
+                        .contains("db_query_seconds_count{repository=\"url_check\",method=\"findPageByUrlId\"}");
+            });
+        }
     }
 
-    @BeforeEach
-    public final void setUp() throws IOException, SQLException {
-        var hikariConfig = new HikariConfig();
-        hikariConfig.setJdbcUrl(TEST_DATABASE_URL);
-        dataSource = new HikariDataSource(hikariConfig);
+    @Nested
+    class UrlTest {
 
-        BaseRepository.dataSource = dataSource;
+        @Test
+        void testIndex() {
+            JavalinTest.test(app, (server, client) -> {
+                var response = client.get("/urls");
+                assertThat(response.code()).isEqualTo(200);
+                assertThat(response.body().string())
+                        .contains(existingUrl.getName())
+                        .contains(existingUrlCheck.getStatusCode().toString());
+            });
+        }
 
-        var schemaStream = AppTest.class.getClassLoader().getResourceAsStream("schema.sql");
-        var sql = new String(schemaStream.readAllBytes())
-                .lines()
-                .collect(Collectors.joining("\n"));
+        @Test
+        void testIndexShowsLatestCheckPerUrl() throws SQLException {
+            Url other = new Url("https://other.example.com");
+            UrlRepository.save(other);
+            UrlCheckRepository.save(new UrlCheck(other.getId(), 404, "old", "old", "old", LocalDateTime.now()));
+            UrlCheckRepository.save(new UrlCheck(other.getId(), 503, "new", "new", "new", LocalDateTime.now()));
+            UrlRepository.save(new Url("https://unchecked.example.com"));
+
+            var urls = UrlRepository.findPage(0, 10);
+            assertThat(urls).hasSize(3);
+            assertThat(urls.get(0).getLatestCheck().getId()).isEqualTo(existingUrlCheck.getId());
+            assertThat(urls.get(1).getLatestCheck().getStatusCode()).isEqualTo(503);
+            assertThat(urls.get(2).getLatestCheck()).isNull();
 
-        try (var connection = dataSource.getConnection();
-             var statement = connection.createStatement()) {
-            statement.execute(sql);
+            JavalinTest.test(app, (server, client) -> {
+                var response = client.get("/urls");
+                assertThat(response.code()).isEqualTo(200);
+                assertThat(response.body().string())
+                        .contains(other.getName())
+                        .contains("503")
+                        .doesNotContain("404");
+            });
         }
 
-        app = App.getApp(TEST_DATABASE_URL);
+        @Test
+        void testIndexPaginationAndSearch() throws SQLException {
+            for (int i = 0; i < UrlController.PAGE_SIZE; i++) {
+                UrlRepository.save(new Url("https://site" + i + ".example.com"));
+            }
 
-        String urlName = "https://en.hexlet.io";
-        Url url = new Url(urlName);
-        UrlRepository.save(url);
-        existingUrl = UrlRepository.findByName(urlName).orElseThrow();
-
-        UrlCheck check = new UrlCheck(
-                existingUrl.getId(),
-                200,
-                "en title",
-                "en h1",
-                "en description",
-                LocalDateTime.now()
-        );
-        UrlCheckRepository.save(check);
-        existingUrlCheck = UrlCheckRepository.findLatestByUrlId(existingUrl.getId()).orElseThrow();
-    }
+            JavalinTest.test(app, (server, client) -> {
+                var firstPage = client.get("/urls").body().string();
+                assertThat(firstPage)
+                        .contains(existingUrl.getName())
+                        .doesNotContain("https://site49.example.com")
+                        .contains("after=" + UrlController.PAGE_SIZE);
 
-    @AfterEach
-    public final void tearDown() throws SQLException {
-        if (dataSource != null && !dataSource.isClosed()) {
-            try (var connection = dataSource.getConnection();
-                 var statement = connection.createStatement()) {
-                statement.execute("DROP ALL OBJECTS");
-            }
-            dataSource.close();
+                var secondPage = client.get("/urls?after=" + UrlController.PAGE_SIZE).body().string();
+                assertThat(secondPage)
+                        .contains("https://site49.example.com")
+                        .doesNotContain(existingUrl.getName());
+
+                var searchPage = client.get("/urls?term=HEXLET").body().string();
+                assertThat(searchPage)
+                        .contains(existingUrl.getName())
+                        .doesNotContain("https://site0.example.com");
+            });
         }
-    }
 
-    @Nested
-    class RootTest {
         @Test
-        void testIndex() {
+        void testSearchRanksNameAndCheckTextMatches() throws SQLException {
+            var docs = new Url("https://docs.example.com");
+            UrlRepository.save(docs);
+            UrlCheckRepository.save(new UrlCheck(docs.getId(), 200, "Reference Manual", null, null,
+                    LocalDateTime.now()));
+            var manual = new Url("https://manual.example.com");
+            UrlRepository.save(manual);
+
+            assertThat(UrlSearchRepository.search("MANUAL", 0, 10))
+                    .extracting(Url::getName)
+                    .containsExactly(manual.getName(), docs.getName());
+            assertThat(UrlSearchRepository.search("manual", 1, 10))
+                    .extracting(Url::getName)
+                    .containsExactly(docs.getName());
+
+            UrlCheckRepository.save(new UrlCheck(docs.getId(), 200, "Changed", null, null, LocalDateTime.now()));
+            assertThat(UrlSearchRepository.search("manual", 0, 10))
+                    .extracting(Url::getName)
+                    .containsExactly(manual.getName());
+
+            for (int i = 0; i < UrlController.PAGE_SIZE; i++) {
+                UrlRepository.save(new Url("https://manual" + i + ".example.com"));
+            }
             JavalinTest.test(app, (server, client) -> {
-                var response = client.get("/");
-                assertThat(response.code()).isEqualTo(200);
-                assertThat(response.body().string()).contains("Анализатор страниц");
+                var firstPage = client.get("/urls?term=manual").body().string();
+                assertThat(firstPage)
+                        .contains(manual.getName())
+                        .contains("offset=" + UrlController.PAGE_SIZE);
+
+                var secondPage = client.get("/urls?term=manual&offset=" + UrlController.PAGE_SIZE).body().string();
+                assertThat(secondPage)
+                        .contains("https://manual49.example.com")
+                        .doesNotContain(manual.getName())
+                        .doesNotContain("offset=");
             });
         }
-    }
-
-    @Nested
-    class UrlTest {
 
         @Test
-        void testIndex() {
+        void testIndexStreamsAllUrls() throws SQLException {
+            for (int i = 0; i < UrlController.PAGE_SIZE; i++) {
+                UrlRepository.save(new Url("https://site" + i + ".example.com"));
+            }
+
             JavalinTest.test(app, (server, client) -> {
-                var response = client.get("/urls");
+                var response = client.get("/urls?all=true");
                 assertThat(response.code()).isEqualTo(200);
+                assertThat(response.header("Content-Type")).contains("text/html");
                 assertThat(response.body().string())
                         .contains(existingUrl.getName())
-                        .contains(existingUrlCheck.getStatusCode().toString());
+                        .contains(existingUrlCheck.getStatusCode().toString())
+                        .contains("https://site0.example.com")
+                        .contains("https://site49.example.com")
+                        .doesNotContain("after=")
+                        .contains("</html>");
+
+                var searchPage = client.get("/urls?all=true&term=site4").body().string();
+                assertThat(searchPage)
+                        .contains("https://site49.example.com")
+                        .doesNotContain("https://site0.example.com")
+                        .doesNotContain(existingUrl.getName());
+
+                // Ranked search covers the latest check's text as well as the name
+                var titlePage = client.get("/urls?all=true&term=en%20title").body().string();
+                assertThat(titlePage)
+                        .contains(existingUrl.getName())
+                        .doesNotContain("https://site0.example.com");
+
+                var emptyPage = client.get("/urls?all=true&term=missing").body().string();
+                assertThat(emptyPage).contains("ничего не найдено");
             });
         }
 
+        @Test
+        void testIndexLimitsOpenStreams() throws SQLException {
+            // URLS_STREAM_MAX cursors, the default two, are already open
+            try (var first = UrlRepository.openCursor().orElseThrow();
+                 var second = UrlRepository.openCursor().orElseThrow()) {
+                JavalinTest.test(app, (server, client) -> {
+                    var response = client.get("/urls?all=true");
+                    assertThat(response.request().url().query()).isNull();
+                    assertThat(response.body().string()).doesNotContain("Показать по страницам");
+                });
+            }
+            JavalinTest.test(app, (server, client) ->
+                    assertThat(client.get("/urls?all=true").body().string()).contains("Показать по страницам"));
+        }
+
         @Test
         void testShow() {
             JavalinTest.test(app, (server, client) -> {
@@ -147,6 +240,35 @@ public class AppTest {
             });
         }
 
+        @Test
+        void testShowPaginatesChecks() throws SQLException {
+            UrlCheck oldest = null;
+            for (int i = 0; i < UrlController.CHECKS_PAGE_SIZE; i++) {
+                var check = new UrlCheck(existingUrl.getId(), 200, "History title " + i, null, null,
+                        LocalDateTime.now());
+                UrlCheckRepository.save(check);
+                if (oldest == null) {
+                    oldest = check;
+                }
+            }
+            var cursor = oldest.getId();
+
+            JavalinTest.test(app, (server, client) -> {
+                var firstPage = client.get("/urls/" + existingUrl.getId()).body().string();
+                assertThat(firstPage)
+                        .contains("History title " + (UrlController.CHECKS_PAGE_SIZE - 1) + "</td>")
+                        .contains("History title 0</td>")
+                        .doesNotContain("en title")
+                        .contains("before=" + cursor);
+
+                var secondPage = client.get("/urls/" + existingUrl.getId() + "?before=" + cursor).body().string();
+                assertThat(secondPage)
+                        .contains("en title")
+                        .doesNotContain("History title")
+                        .doesNotContain("before=");
+            });
+        }
+
         @Test
         void testStore() {
             String inputUrl = "https://ru.hexlet.io";
@@ -232,46 +354,6 @@ public class AppTest {
         }
     }
 
-    @Nested
-    class UrlCheckTest {
-
-        @Test
-        void testStore() {
-            String url = mockServer.url("/").toString().replaceAll("/$", "");
-
-            JavalinTest.test(app, (server, client) -> {
-                var requestBody = "url=" + url;
-                var postResponse = client.post("/urls", requestBody);
-                assertThat(postResponse.code()).isIn(200, 302);
-
-                var actualUrl = UrlRepository.findByName(url);
-                assertThat(actualUrl).isPresent();
-                assertThat(actualUrl.get().getName()).isEqualTo(url);
-
-                var checkResponse = client.post("/urls/" + actualUrl.get().getId() + "/checks", "");
-                assertThat(checkResponse.code()).isIn(200, 302);
-
-                var showResponse = client.get("/urls/" + actualUrl.get().getId());
-                assertThat(showResponse.code()).isEqualTo(200);
-
-                var actualCheck = UrlCheckRepository.findLatestByUrlId(actualUrl.get().getId());
-                assertThat(actualCheck).isPresent();
-                assertThat(actualCheck.get().getTitle()).isEqualTo("Test page");
-                assertThat(actualCheck.get().getH1()).isEqualTo("Do not expect a miracle, miracles yourself!");
-                assertThat(actualCheck.get().getDescription()).isEqualTo("statements of great people");
-            });
-        }
-
-        @Test
-        void testCheckNotFound() {
-            JavalinTest.test(app, (server, client) -> {
-                var response = client.post("/urls/999999/checks", "");
-                assertThat(response.code()).isIn(404, 500);
-            });
-        }
-
-    }
-
     @Test
     public void testCreateUrlWithDuplicate() {
         JavalinTest.test(app, (server, client) -> {
@@ -282,6 +364,45 @@ public class AppTest {
         });
     }
 
+    @Test
+    public void testConcurrentSaveIfAbsentInsertsOnce() throws Exception {
+        String name = "https://concurrent.example.com";
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                tasks.add(() -> UrlRepository.saveIfAbsent(new Url(name)));
+            }
+            long inserted = 0;
+            for (var future : executor.invokeAll(tasks)) {
+                if (future.get()) {
+                    inserted++;
+                }
+            }
+            assertThat(inserted).isEqualTo(1);
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(UrlRepository.findByName(name)).isPresent();
+    }
+
+    @Test
+    public void testUrlCacheIsInvalidatedOnWrites() throws SQLException {
+        var name = "https://cached.example.com";
+        assertThat(UrlRepository.findByName(name)).isEmpty();
+
+        var url = new Url(name);
+        UrlRepository.save(url);
+        assertThat(UrlRepository.findByName(name)).isPresent();
+        assertThat(UrlRepository.find(url.getId())).isPresent();
+        assertThat(UrlCheckRepository.findLatestByUrlId(url.getId())).isEmpty();
+
+        var check = new UrlCheck(url.getId(), 200, "title", "h1", "description", LocalDateTime.now());
+        UrlCheckRepository.save(check);
+        assertThat(UrlCheckRepository.findLatestByUrlId(url.getId()))
+                .hasValueSatisfying(latest -> assertThat(latest.getId()).isEqualTo(check.getId()));
+    }
+
     @Test
     public void testUrlRepositoryFindNonExistent() throws SQLException {
         Optional<Url> url = UrlRepository.find(999999L);
@@ -0,0 +1,116 @@
+package hexlet.code;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.BaseRepository;
+import hexlet.code.repository.Migrations;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.service.HostGuard;
+import io.javalin.Javalin;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+
+public abstract class BaseAppTest {
+    protected Javalin app;
+    protected static MockWebServer mockServer;
+    protected Url existingUrl;
+    protected UrlCheck existingUrlCheck;
+    protected HikariDataSource dataSource;
+    protected static final String TEST_DATABASE_URL = "jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1;";
+
+    private static Path getFixturePath(String fileName) {
+        return Paths.get("src", "test", "resources", "fixtures", fileName)
+                .toAbsolutePath().normalize();
+    }
+
+    protected static String readFixture(String fileName) throws IOException {
+        Path filePath = getFixturePath(fileName);
+        return Files.readString(filePath).trim();
+    }
+
+    protected static Optional<UrlCheck> awaitLatestCheck(Long urlId) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        Optional<UrlCheck> check = UrlCheckRepository.findLatestByUrlId(urlId);
+        while (check.isPresent() && !check.get().getStatus().isFinished()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            check = UrlCheckRepository.findLatestByUrlId(urlId);
+        }
+        return check;
+    }
+
+    @BeforeAll
+    static void beforeAll() throws IOException {
+        mockServer = new MockWebServer();
+        MockResponse mockedResponse = new MockResponse()
+            .setBody(readFixture("index.html"));
+        mockServer.enqueue(mockedResponse);
+        mockServer.start();
+
+    }
+
+    @AfterAll
+    public static void afterAll() throws IOException {
+        mockServer.shutdown();
+    }
+
+    @BeforeEach
+    public final void setUp() throws IOException, SQLException {
+        var hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(TEST_DATABASE_URL);
+        dataSource = new HikariDataSource(hikariConfig);
+
+        BaseRepository.dataSource = dataSource;
+        Migrations.migrate(dataSource);
+        HostGuard.reset();
+
+        app = App.getApp(TEST_DATABASE_URL);
+
+        String urlName = "https://en.hexlet.io";
+        Url url = new Url(urlName);
+        UrlRepository.save(url);
+        existingUrl = UrlRepository.findByName(urlName).orElseThrow();
+
+        UrlCheck check = new UrlCheck(
+                existingUrl.getId(),
+                200,
+                "en title",
+                "en h1",
+                "en description",
+                LocalDateTime.now()
+        );
+        UrlCheckRepository.save(check);
+        existingUrlCheck = UrlCheckRepository.findLatestByUrlId(existingUrl.getId()).orElseThrow();
+    }
+
+    @AfterEach
+    public final void tearDown() throws SQLException {
+        if (dataSource != null && !dataSource.isClosed()) {
+            try (var connection = dataSource.getConnection();
+                 var statement = connection.createStatement()) {
+                statement.execute("DROP ALL OBJECTS");
+            }
+            dataSource.close();
+        }
+        // Each App.getApp opens its own pool and makes it the repositories' one
+        if (BaseRepository.dataSource != dataSource) {
+            BaseRepository.dataSource.close();
+        }
+    }
+}
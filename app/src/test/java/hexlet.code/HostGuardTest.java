@@ -0,0 +1,68 @@
+package hexlet.code;
+
+import hexlet.code.service.HostGuard;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HostGuardTest {
+    private static final String HOST = "guarded.example.com";
+
+    @BeforeEach
+    void setUp() {
+        HostGuard.reset();
+    }
+
+    @Test
+    void testHostOf() {
+        assertThat(HostGuard.hostOf("https://Example.COM/path")).isEqualTo("example.com");
+        assertThat(HostGuard.hostOf("http://example.com:8080")).isEqualTo("example.com:8080");
+    }
+
+    @Test
+    void testRateLimitAllowsBurstThenRefuses() throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            assertThat(HostGuard.acquire(HOST, 0)).isNull();
+        }
+        assertThat(HostGuard.acquire(HOST, 0)).contains("Слишком частые проверки");
+        assertThat(HostGuard.acquire("other.example.com", 0)).isNull();
+    }
+
+    @Test
+    void testCircuitOpensAfterConsecutiveFailures() throws InterruptedException {
+        assertThat(HostGuard.stateOf(HOST)).isEqualTo(HostGuard.State.CLOSED);
+        for (int i = 0; i < 5; i++) {
+            assertThat(HostGuard.acquire(HOST, 0)).isNull();
+            HostGuard.recordResult(HOST, false);
+        }
+
+        assertThat(HostGuard.stateOf(HOST)).isEqualTo(HostGuard.State.OPEN);
+        assertThat(HostGuard.acquire(HOST, 0)).startsWith("Хост недоступен");
+    }
+
+    @Test
+    void testIdleHostsAreEvicted() throws InterruptedException {
+        HostGuard.acquire(HOST, 0);
+        HostGuard.acquire("other.example.com", 0);
+
+        assertThat(HostGuard.evictIdle(System.nanoTime())).isZero();
+        assertThat(HostGuard.evictIdle(System.nanoTime() + TimeUnit.HOURS.toNanos(1))).isEqualTo(2);
+        assertThat(HostGuard.acquire(HOST, 0)).isNull();
+    }
+
+    @Test
+    void testSuccessResetsFailureCount() throws InterruptedException {
+        for (int i = 0; i < 4; i++) {
+            HostGuard.acquire(HOST, 0);
+            HostGuard.recordResult(HOST, false);
+        }
+        HostGuard.acquire(HOST, 0);
+        HostGuard.recordResult(HOST, true);
+        HostGuard.recordResult(HOST, false);
+
+        assertThat(HostGuard.stateOf(HOST)).isEqualTo(HostGuard.State.CLOSED);
+    }
+}
@@ -0,0 +1,91 @@
+package hexlet.code;
+
+import hexlet.code.model.LatencySketch;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+public class LatencySketchTest {
+    @Test
+    void testEmptySketch() {
+        var sketch = new LatencySketch();
+
+        assertThat(sketch.getCount()).isZero();
+        assertThat(sketch.percentile(0.5)).isNull();
+        assertThat(sketch.encode()).isEmpty();
+    }
+
+    @Test
+    void testShortTimesAreExact() {
+        var sketch = new LatencySketch();
+        sketch.add(3);
+        sketch.add(5);
+        sketch.add(7);
+        sketch.add(-1);
+
+        assertThat(sketch.getCount()).isEqualTo(4);
+        assertThat(sketch.percentile(0.25)).isZero();
+        assertThat(sketch.percentile(0.5)).isEqualTo(3);
+        assertThat(sketch.percentile(1.0)).isEqualTo(7);
+    }
+
+    @Test
+    void testPercentileIsWithinASixteenth() {
+        for (int millis = 16; millis < 10_000_000; millis = millis * 3 / 2 + 1) {
+            var sketch = new LatencySketch();
+            sketch.add(millis);
+
+            assertThat(sketch.percentile(0.5)).isCloseTo(millis, offset(millis / 16));
+        }
+    }
+
+    @Test
+    void testMergeMatchesOneSketch() {
+        var all = new LatencySketch();
+        var even = new LatencySketch();
+        var odd = new LatencySketch();
+        for (int millis = 1; millis <= 1000; millis++) {
+            all.add(millis);
+            (millis % 2 == 0 ? even : odd).add(millis);
+        }
+        even.merge(odd);
+
+        assertThat(even.getCount()).isEqualTo(1000);
+        assertThat(even.encode()).isEqualTo(all.encode());
+        assertThat(even.percentile(0.99)).isEqualTo(all.percentile(0.99));
+    }
+
+    @Test
+    void testEncodeRoundTrip() {
+        var sketch = new LatencySketch();
+        for (int millis = 0; millis < 5000; millis += 7) {
+            sketch.add(millis);
+        }
+
+        var decoded = LatencySketch.decode(sketch.encode());
+
+        assertThat(decoded.getCount()).isEqualTo(sketch.getCount());
+        assertThat(decoded.encode()).isEqualTo(sketch.encode());
+        assertThat(decoded.percentile(0.5)).isEqualTo(sketch.percentile(0.5));
+        assertThat(LatencySketch.decode(null).getCount()).isZero();
+    }
+
+    @Test
+    void testDecodeAddsUpAppendedSketches() {
+        var first = new LatencySketch();
+        var second = new LatencySketch();
+        var both = new LatencySketch();
+        for (int millis = 0; millis < 500; millis += 3) {
+            first.add(millis);
+            second.add(millis + 1);
+            both.add(millis);
+            both.add(millis + 1);
+        }
+
+        var decoded = LatencySketch.decode(first.encode() + "," + second.encode());
+
+        assertThat(decoded.getCount()).isEqualTo(both.getCount());
+        assertThat(decoded.encode()).isEqualTo(both.encode());
+    }
+}
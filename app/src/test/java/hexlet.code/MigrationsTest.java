@@ -0,0 +1,68 @@
+package hexlet.code;
+
+import hexlet.code.repository.Migrations;
+import hexlet.code.repository.UrlRepository;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MigrationsTest extends BaseAppTest {
+    @Test
+    public void testMigrationsAreIdempotentAndCreateIndexes() throws SQLException {
+        Migrations.migrate(dataSource);
+        Migrations.migrate(dataSource);
+
+        assertThat(UrlRepository.findByName(existingUrl.getName())).isPresent();
+        assertThat(Migrations.findMissingIndexes(dataSource)).isEmpty();
+        try (var connection = dataSource.getConnection();
+             var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("SELECT COUNT(*) FROM schema_migrations")) {
+            resultSet.next();
+            assertThat(resultSet.getInt(1)).isEqualTo(Migrations.available(dataSource).size());
+        }
+    }
+
+    @Test
+    public void testConcurrentMigrationsApplyEachVersionOnce() throws Exception {
+        try (var connection = dataSource.getConnection();
+             var statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                tasks.add(() -> {
+                    Migrations.migrate(dataSource);
+                    return null;
+                });
+            }
+            for (var future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        try (var connection = dataSource.getConnection();
+             var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("SELECT COUNT(*) FROM schema_migrations")) {
+            resultSet.next();
+            assertThat(resultSet.getInt(1)).isEqualTo(Migrations.available(dataSource).size());
+        }
+    }
+
+    @Test
+    public void testMissingIndexesAreReported() throws SQLException {
+        try (var connection = dataSource.getConnection();
+             var statement = connection.createStatement()) {
+            statement.execute("DROP INDEX url_checks_url_id_created_at_idx");
+        }
+        assertThat(Migrations.findMissingIndexes(dataSource)).containsExactly("url_checks(url_id, created_at)");
+    }
+}
@@ -0,0 +1,99 @@
+package hexlet.code;
+
+import hexlet.code.service.PageInfo;
+import hexlet.code.service.PageParser;
+import hexlet.code.util.LimitedInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PageParserTest {
+    private static final int MEGABYTE = 1024 * 1024;
+
+    private static String largePage(String head, String bodyStart, int fillerBytes) {
+        var html = new StringBuilder("<!DOCTYPE html><html><head>").append(head).append("</head><body>")
+                .append(bodyStart);
+        while (html.length() < fillerBytes) {
+            html.append("<div class=\"row\"><p>Lorem ipsum dolor sit amet</p><span>consectetur</span></div>\n");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static PageInfo parse(byte[] bytes, String contentType, int maxBytes) throws IOException {
+        return PageParser.parse(new ByteArrayInputStream(bytes), contentType, maxBytes);
+    }
+
+    @Test
+    void testMatchesFullDocumentParsing() throws IOException {
+        String html = Files.readString(Paths.get("src", "test", "resources", "fixtures", "index.html"));
+
+        PageInfo streamed = parse(html.getBytes(StandardCharsets.UTF_8), "text/html", MEGABYTE);
+        PageInfo full = PageParser.parseDocument(html);
+
+        assertThat(streamed.getTitle()).isEqualTo(full.getTitle()).isEqualTo("Test page");
+        assertThat(streamed.getH1()).isEqualTo(full.getH1());
+        assertThat(streamed.getDescription()).isEqualTo(full.getDescription());
+    }
+
+    @Test
+    void testStopsReadingOnceEverythingIsFound() throws IOException {
+        String html = largePage("<title>Big</title><meta name=\"description\" content=\"large page\">",
+                "<h1>Heading <b>bold</b></h1>", 5 * MEGABYTE);
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        var counting = new LimitedInputStream(new ByteArrayInputStream(bytes), Long.MAX_VALUE);
+
+        PageInfo page = PageParser.parse(counting, "text/html; charset=utf-8", 10 * MEGABYTE);
+
+        assertThat(page.getTitle()).isEqualTo("Big");
+        assertThat(page.getH1()).isEqualTo("Heading bold");
+        assertThat(page.getDescription()).isEqualTo("large page");
+        assertThat(counting.getCount()).isLessThan(bytes.length / 10);
+    }
+
+    @Test
+    void testHashesOnlyTheBytesItReads() throws IOException {
+        String html = largePage("<title>Big</title><meta name=\"description\" content=\"large page\">",
+                "<h1>Heading</h1>", 5 * MEGABYTE);
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        var counting = new LimitedInputStream(new ByteArrayInputStream(bytes), Long.MAX_VALUE);
+
+        PageInfo page = PageParser.parse(counting, "text/html; charset=utf-8", 10 * MEGABYTE, true);
+        PageInfo again = PageParser.parse(new ByteArrayInputStream(bytes), "text/html; charset=utf-8",
+                10 * MEGABYTE, true);
+
+        assertThat(page.getBodyHash()).isNotNull().isEqualTo(again.getBodyHash());
+        assertThat(counting.getCount()).isLessThan(bytes.length / 10);
+    }
+
+    @Test
+    void testRespectsByteCap() throws IOException {
+        String html = largePage("<title>Capped</title>", "", 200 * 1024) + "<h1>Too far</h1>";
+
+        PageInfo page = parse(html.getBytes(StandardCharsets.UTF_8), "text/html", 16 * 1024);
+
+        assertThat(page.getTitle()).isEqualTo("Capped");
+        assertThat(page.getH1()).isNull();
+        assertThat(page.getDescription()).isNull();
+    }
+
+    @Test
+    void testHonorsCharset() throws IOException {
+        var cp1251 = Charset.forName("windows-1251");
+        String html = "<html><head><title>Заголовок</title></head><body><h1>Привет</h1></body></html>";
+
+        PageInfo fromHeader = parse(html.getBytes(cp1251), "text/html; charset=windows-1251", MEGABYTE);
+        assertThat(fromHeader.getTitle()).isEqualTo("Заголовок");
+        assertThat(fromHeader.getH1()).isEqualTo("Привет");
+
+        String withMeta = html.replace("<head>", "<head><meta charset=\"windows-1251\">");
+        PageInfo fromMeta = parse(withMeta.getBytes(cp1251), "text/html", MEGABYTE);
+        assertThat(fromMeta.getTitle()).isEqualTo("Заголовок");
+    }
+}
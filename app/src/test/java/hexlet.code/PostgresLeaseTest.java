@@ -0,0 +1,85 @@
+package hexlet.code;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlSchedule;
+import hexlet.code.repository.BaseRepository;
+import hexlet.code.repository.Migrations;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.repository.UrlScheduleRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The FOR UPDATE SKIP LOCKED claim only runs on Postgres, e.g.
+// TEST_POSTGRES_URL=jdbc:postgresql://localhost/test?user=test&password=test
+@EnabledIfEnvironmentVariable(named = "TEST_POSTGRES_URL", matches = ".+")
+public class PostgresLeaseTest {
+    private static HikariDataSource dataSource;
+
+    @BeforeAll
+    static void beforeAll() throws SQLException {
+        var hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(System.getenv("TEST_POSTGRES_URL"));
+        dataSource = new HikariDataSource(hikariConfig);
+        Migrations.migrate(dataSource);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        dataSource.close();
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        BaseRepository.dataSource = dataSource;
+        UrlRepository.deleteAll();
+    }
+
+    @Test
+    void testClaimSkipsRowsLockedByAnotherNode() throws SQLException {
+        for (int i = 0; i < 10; i++) {
+            UrlRepository.save(new Url("https://site" + i + ".example.com"));
+        }
+        var now = LocalDateTime.now();
+        UrlScheduleRepository.scheduleMissing(now, 60, 100);
+        var due = now.plusMinutes(2);
+
+        // Another node is in the middle of claiming three rows and still holds their row locks
+        List<Long> locked = new ArrayList<>();
+        try (var conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (var stmt = conn.prepareStatement(
+                    "SELECT url_id FROM url_schedule ORDER BY next_check_at LIMIT 3 FOR UPDATE")) {
+                var rs = stmt.executeQuery();
+                while (rs.next()) {
+                    locked.add(rs.getLong("url_id"));
+                }
+            }
+            var first = UrlScheduleRepository.claimDue("node-a", due, 120, 100);
+            assertThat(first).hasSize(7);
+            assertThat(first).extracting(UrlSchedule::getUrlId).doesNotContainAnyElementsOf(locked);
+            conn.rollback();
+        }
+
+        var second = UrlScheduleRepository.claimDue("node-b", due, 120, 100);
+        assertThat(second).extracting(UrlSchedule::getUrlId).containsExactlyInAnyOrderElementsOf(locked);
+        assertThat(UrlScheduleRepository.claimDue("node-c", due, 120, 100)).isEmpty();
+
+        // Expired leases are free again
+        assertThat(UrlScheduleRepository.extendLeases("node-b", locked, 0)).isEqualTo(3);
+        assertThat(UrlScheduleRepository.claimDue("node-c", due, 120, 100))
+                .extracting(UrlSchedule::getUrlId)
+                .containsExactlyInAnyOrderElementsOf(locked);
+    }
+}
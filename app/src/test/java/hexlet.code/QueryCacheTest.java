@@ -0,0 +1,66 @@
+package hexlet.code;
+
+import hexlet.code.repository.QueryCache;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class QueryCacheTest {
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private String load(String key) {
+        loads.incrementAndGet();
+        return key.toUpperCase();
+    }
+
+    @Test
+    void testServesRepeatedLookupsFromMemory() throws SQLException {
+        var cache = new QueryCache<String, String>("test_repeat", 10, Duration.ofMinutes(1));
+
+        assertThat(cache.get("a", () -> load("a"))).isEqualTo("A");
+        assertThat(cache.get("a", () -> load("a"))).isEqualTo("A");
+        assertThat(loads.get()).isEqualTo(QueryCache.ENABLED ? 1 : 2);
+    }
+
+    @Test
+    void testInvalidateForcesReload() throws SQLException {
+        var cache = new QueryCache<String, String>("test_invalidate", 10, Duration.ofMinutes(1));
+
+        cache.get("a", () -> load("a"));
+        cache.invalidate("a");
+        cache.get("a", () -> load("a"));
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() throws SQLException {
+        var cache = new QueryCache<String, String>("test_lru", 2, Duration.ofMinutes(1));
+
+        cache.get("a", () -> load("a"));
+        cache.get("b", () -> load("b"));
+        cache.get("a", () -> load("a"));
+        cache.get("c", () -> load("c"));
+        assertThat(cache.size()).isLessThanOrEqualTo(2);
+
+        loads.set(0);
+        cache.get("a", () -> load("a"));
+        cache.get("b", () -> load("b"));
+        assertThat(loads.get()).isEqualTo(QueryCache.ENABLED ? 1 : 2);
+    }
+
+    @Test
+    void testExpiresEntriesAfterTtl() throws SQLException, InterruptedException {
+        var cache = new QueryCache<String, String>("test_ttl", 10, Duration.ofMillis(20));
+
+        cache.get("a", () -> load("a"));
+        Thread.sleep(50);
+        cache.get("a", () -> load("a"));
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,57 @@
+package hexlet.code;
+
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.Url;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.service.HostGuard;
+import hexlet.code.service.UrlCheckService;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RedirectTest extends BaseAppTest {
+    @Test
+    void testRedirectToRefusedHostIsNotFollowed() throws Exception {
+        try (var target = new MockWebServer(); var server = new MockWebServer()) {
+            target.start();
+            server.enqueue(new MockResponse().setResponseCode(302).setHeader("Location", target.url("/").toString()));
+            server.start();
+            String targetHost = HostGuard.hostOf(target.url("/").toString());
+            HostGuard.acquire(targetHost, 0);
+            for (int i = 0; i < 5; i++) {
+                HostGuard.recordResult(targetHost, false);
+            }
+            Url url = new Url(server.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+
+            UrlCheckService.submit(url).orElseThrow();
+            var check = awaitLatestCheck(url.getId()).orElseThrow();
+            assertThat(check.getStatus()).isEqualTo(CheckStatus.FAILED);
+            assertThat(check.getError()).startsWith("Хост недоступен");
+            assertThat(server.getRequestCount()).isEqualTo(1);
+            assertThat(target.getRequestCount()).isZero();
+        }
+    }
+
+    @Test
+    void testLongFinalUrlIsCut() throws Exception {
+        String path = "/" + "a".repeat(3000);
+        try (var server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setResponseCode(301).setHeader("Location", path));
+            server.enqueue(new MockResponse().setBody(readFixture("index.html")));
+            server.start();
+            Url url = new Url(server.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+
+            UrlCheckService.submit(url).orElseThrow();
+            var check = awaitLatestCheck(url.getId()).orElseThrow();
+            assertThat(check.getStatus()).isEqualTo(CheckStatus.DONE);
+            assertThat(check.getTitle()).isEqualTo("Test page");
+            assertThat(check.getFinalUrl())
+                    .hasSize(2048)
+                    .startsWith(server.url(path).toString().substring(0, 100));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package hexlet.code.repository;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// In the repository package, since SearchIndex is package-private
+public class SearchIndexTest {
+    private final SearchIndex index = new SearchIndex(100);
+
+    @Test
+    void testRanksNameMatchesBeforeTextMatches() {
+        index.put(1, "https://docs.example.com", "Reference Manual");
+        index.put(2, "https://manual.example.com", null);
+        index.put(3, "https://manual.example.org", "User manual");
+        index.put(4, "https://other.example.com", "Nothing here");
+
+        assertThat(index.search("MANUAL", 0, 10))
+                .extracting(SearchIndex.Hit::urlId)
+                .containsExactly(3L, 2L, 1L);
+        assertThat(index.search("manual", 1, 1))
+                .extracting(SearchIndex.Hit::urlId)
+                .containsExactly(2L);
+        assertThat(index.search("manual", 5, 10)).isEmpty();
+        assertThat(index.search("missing", 0, 10)).isEmpty();
+    }
+
+    @Test
+    void testSearchAfterContinuesTheRanking() {
+        index.put(1, "https://docs.example.com", "Reference Manual");
+        index.put(2, "https://manual.example.com", null);
+        index.put(3, "https://manual.example.org", "User manual");
+
+        var first = index.search("manual", 0, 1);
+        assertThat(first).extracting(SearchIndex.Hit::urlId).containsExactly(3L);
+        assertThat(index.searchAfter("manual", first.get(0), 10))
+                .extracting(SearchIndex.Hit::urlId)
+                .containsExactly(2L, 1L);
+    }
+
+    @Test
+    void testKeepsTheNewestUrlsWithinCapacity() {
+        var small = new SearchIndex(2);
+        small.put(2, "https://b.example.com", null);
+        small.put(3, "https://c.example.com", null);
+        small.put(1, "https://a.example.com", null);
+        small.put(4, "https://d.example.com", null);
+
+        assertThat(small.search("example", 0, 10))
+                .extracting(SearchIndex.Hit::urlId)
+                .containsExactly(3L, 4L);
+        assertThat(small.getMaxUrlId()).isEqualTo(4);
+    }
+
+    @Test
+    void testPutReplacesPreviousText() {
+        index.put(1, "https://docs.example.com", "Reference Manual");
+        index.put(1, "https://docs.example.com", "Changed");
+
+        assertThat(index.search("manual", 0, 10)).isEmpty();
+        assertThat(index.search("changed", 0, 10))
+                .extracting(SearchIndex.Hit::urlId)
+                .containsExactly(1L);
+        assertThat(index.getMaxUrlId()).isEqualTo(1);
+    }
+
+    @Test
+    void testShortTermsScanEveryDocument() {
+        index.put(1, "https://a.example.com", null);
+        index.put(2, "https://b.example.org", "io");
+
+        assertThat(index.search("io", 0, 10))
+                .extracting(SearchIndex.Hit::urlId)
+                .containsExactly(2L);
+        assertThat(index.search(".", 0, 10)).hasSize(2);
+    }
+
+    @Test
+    void testStaleIdsAreTrackedOnceLoaded() {
+        index.markStale(1L);
+        assertThat(index.takeStale()).isEmpty();
+
+        index.markLoaded();
+        index.markStale(1L);
+        index.markStale(2L);
+        index.markStale(1L);
+        assertThat(index.takeStale()).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(index.takeStale()).isEmpty();
+
+        index.put(7, "https://docs.example.com", null);
+        index.clear();
+        assertThat(index.getMaxUrlId()).isZero();
+        assertThat(index.search("docs", 0, 10)).isEmpty();
+    }
+}
@@ -0,0 +1,485 @@
+package hexlet.code;
+
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlSchedule;
+import hexlet.code.repository.JobLeaseRepository;
+import hexlet.code.repository.UrlCheckDailyRepository;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.repository.UrlScheduleRepository;
+import hexlet.code.service.BatchCheckJob;
+import hexlet.code.service.CheckWriter;
+import hexlet.code.service.HostGuard;
+import hexlet.code.service.MonitorScheduler;
+import hexlet.code.service.RetentionJob;
+import hexlet.code.service.UrlCheckService;
+import io.javalin.testtools.JavalinTest;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UrlCheckTest extends BaseAppTest {
+
+    @Test
+    void testStore() {
+        String url = mockServer.url("/").toString().replaceAll("/$", "");
+
+        JavalinTest.test(app, (server, client) -> {
+            var requestBody = "url=" + url;
+            var postResponse = client.post("/urls", requestBody);
+            assertThat(postResponse.code()).isIn(200, 302);
+
+            var actualUrl = UrlRepository.findByName(url);
+            assertThat(actualUrl).isPresent();
+            assertThat(actualUrl.get().getName()).isEqualTo(url);
+
+            var checkResponse = client.post("/urls/" + actualUrl.get().getId() + "/checks", "");
+            assertThat(checkResponse.code()).isIn(200, 302);
+
+            var actualCheck = awaitLatestCheck(actualUrl.get().getId());
+            assertThat(actualCheck).isPresent();
+            assertThat(actualCheck.get().getStatus()).isEqualTo(CheckStatus.DONE);
+
+            var showResponse = client.get("/urls/" + actualUrl.get().getId());
+            assertThat(showResponse.code()).isEqualTo(200);
+
+            assertThat(actualCheck.get().getTitle()).isEqualTo("Test page");
+            assertThat(actualCheck.get().getH1()).isEqualTo("Do not expect a miracle, miracles yourself!");
+            assertThat(actualCheck.get().getDescription()).isEqualTo("statements of great people");
+        });
+    }
+
+    @Test
+    void testBatchCheckAll() throws SQLException, IOException {
+        UrlRepository.deleteAll();
+        mockServer.enqueue(new MockResponse().setBody(readFixture("index.html")));
+        String url = mockServer.url("/").toString().replaceAll("/$", "");
+        UrlRepository.save(new Url(url));
+
+        assertThat(BatchCheckJob.run()).isTrue();
+
+        var progress = BatchCheckJob.getProgress().orElseThrow();
+        assertThat(progress.isFinished()).isTrue();
+        assertThat(progress.getTotal()).isEqualTo(1);
+        assertThat(progress.getCompleted()).isEqualTo(1);
+
+        var savedUrl = UrlRepository.findByName(url).orElseThrow();
+        var check = UrlCheckRepository.findLatestByUrlId(savedUrl.getId()).orElseThrow();
+        assertThat(check.getStatus()).isEqualTo(CheckStatus.DONE);
+        assertThat(check.getTitle()).isEqualTo("Test page");
+    }
+
+    @Test
+    void testMonitorAdaptsIntervalAndKeepsSchedule() throws Exception {
+        UrlRepository.deleteAll();
+        try (var server = new MockWebServer()) {
+            for (int i = 0; i < 4; i++) {
+                server.enqueue(new MockResponse().setBody(readFixture("index.html")));
+            }
+            server.enqueue(new MockResponse().setResponseCode(503));
+            server.start();
+            Url url = new Url(server.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+
+            // The first pass only spreads the new site over its first interval
+            var now = LocalDateTime.now();
+            assertThat(MonitorScheduler.runDue(now)).isZero();
+            var schedule = UrlScheduleRepository.find(url.getId()).orElseThrow();
+            assertThat(schedule.getNextCheckAt()).isBetween(now, now.plusSeconds(300));
+            assertThat(schedule.getLastFailed()).isNull();
+
+            // Each later pass is a day on, so the site is due whatever its interval is
+            assertThat(MonitorScheduler.runDue(now.plusDays(1))).isEqualTo(1);
+            for (int day = 2; day <= 4; day++) {
+                MonitorScheduler.runDue(now.plusDays(day));
+            }
+            schedule = UrlScheduleRepository.find(url.getId()).orElseThrow();
+            assertThat(schedule.getIntervalSeconds()).isEqualTo(600);
+            assertThat(schedule.getLastStatusCode()).isEqualTo(200);
+
+            MonitorScheduler.runDue(now.plusDays(5));
+            schedule = UrlScheduleRepository.find(url.getId()).orElseThrow();
+            assertThat(schedule.getIntervalSeconds()).isEqualTo(300);
+            assertThat(schedule.getLastStatusCode()).isEqualTo(503);
+            assertThat(schedule.getNextCheckAt())
+                    .isBetween(now.plusDays(5).plusSeconds(270), now.plusDays(5).plusSeconds(330));
+            assertThat(UrlCheckRepository.findPageByUrlId(url.getId(), null, 100)).hasSize(5);
+        }
+    }
+
+    @Test
+    void testMonitorKeepsIntervalWhenHostGuardRefuses() throws Exception {
+        UrlRepository.deleteAll();
+        try (var server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody(readFixture("index.html")));
+            server.start();
+            Url url = new Url(server.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+
+            var now = LocalDateTime.now();
+            MonitorScheduler.runDue(now);
+            MonitorScheduler.runDue(now.plusDays(1));
+            String host = HostGuard.hostOf(url.getName());
+            for (int i = 0; i < 5; i++) {
+                HostGuard.recordResult(host, false);
+            }
+
+            assertThat(MonitorScheduler.runDue(now.plusDays(2))).isEqualTo(1);
+            assertThat(UrlCheckRepository.findPageByUrlId(url.getId(), null, 100)).singleElement()
+                    .satisfies(check -> assertThat(check.getStatus()).isEqualTo(CheckStatus.DONE));
+            var schedule = UrlScheduleRepository.find(url.getId()).orElseThrow();
+            assertThat(schedule.getIntervalSeconds()).isEqualTo(300);
+            assertThat(schedule.getStableChecks()).isZero();
+            assertThat(schedule.getLastFailed()).isFalse();
+            assertThat(schedule.getLastStatusCode()).isEqualTo(200);
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        } finally {
+            HostGuard.reset();
+        }
+    }
+
+    @Test
+    void testConditionalRecheck() throws Exception {
+        try (var server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody(readFixture("index.html")).setHeader("ETag", "\"v1\""));
+            server.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""));
+            server.enqueue(new MockResponse().setBody(readFixture("index.html")));
+            server.start();
+            Url url = new Url(server.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+
+            UrlCheckService.submit(url).orElseThrow();
+            var first = awaitLatestCheck(url.getId()).orElseThrow();
+            assertThat(first.getEtag()).isEqualTo("\"v1\"");
+            assertThat(first.getBodyHash()).isNotNull();
+            assertThat(first.isUnchanged()).isFalse();
+
+            UrlCheckService.submit(url).orElseThrow();
+            var second = awaitLatestCheck(url.getId()).orElseThrow();
+            server.takeRequest();
+            assertThat(server.takeRequest().getHeader("If-None-Match")).isEqualTo("\"v1\"");
+            assertThat(second.isUnchanged()).isTrue();
+            assertThat(second.getStatusCode()).isEqualTo(200);
+            assertThat(second.getTitle()).isEqualTo("Test page");
+
+            UrlCheckService.submit(url).orElseThrow();
+            var third = awaitLatestCheck(url.getId()).orElseThrow();
+            assertThat(third.isUnchanged()).isTrue();
+            assertThat(third.getBodyHash()).isEqualTo(first.getBodyHash());
+        }
+    }
+
+    @Test
+    void testCheckRecordsTimingsSizesAndRedirects() throws Exception {
+        var page = readFixture("index.html").repeat(20);
+        var gzipped = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(page.getBytes());
+        }
+        try (var server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setResponseCode(301).setHeader("Location", "/moved"));
+            server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip")
+                    .setBody(new Buffer().write(gzipped.toByteArray())));
+            server.start();
+            Url url = new Url(server.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+
+            UrlCheckService.submit(url).orElseThrow();
+            var check = awaitLatestCheck(url.getId()).orElseThrow();
+            assertThat(check.getStatusCode()).isEqualTo(200);
+            assertThat(check.getTitle()).isEqualTo("Test page");
+            assertThat(check.getRedirects()).isEqualTo(1);
+            assertThat(check.getFinalUrl()).isEqualTo(server.url("/moved").toString());
+            assertThat(check.getContentBytes()).isEqualTo((long) page.getBytes().length);
+            assertThat(check.getTransferBytes()).isEqualTo((long) gzipped.size());
+            assertThat(check.getTotalMillis()).isNotNull();
+            assertThat(check.getTtfbMillis()).isBetween(0, check.getTotalMillis());
+            assertThat(server.takeRequest().getHeader("Accept-Encoding")).contains("gzip");
+
+            JavalinTest.test(app, (ignored, client) -> {
+                var body = client.get("/urls/" + url.getId()).body().string();
+                assertThat(body).contains("Время ответа", "<polyline", "перенаправлений: 1");
+            });
+        }
+    }
+
+    @Test
+    void testRepeatChecksReuseConnection() throws Exception {
+        try (var server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody(readFixture("index.html")));
+            server.enqueue(new MockResponse().setBody(readFixture("index.html")));
+            server.start();
+            Url url = new Url(server.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+
+            UrlCheckService.submit(url).orElseThrow();
+            awaitLatestCheck(url.getId()).orElseThrow();
+            UrlCheckService.submit(url).orElseThrow();
+            awaitLatestCheck(url.getId()).orElseThrow();
+
+            assertThat(server.takeRequest().getSequenceNumber()).isZero();
+            assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(1);
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void testHostRateLimit() throws Exception {
+        try (var server = new MockWebServer()) {
+            for (int i = 0; i < 10; i++) {
+                server.enqueue(new MockResponse().setBody(readFixture("index.html")));
+            }
+            server.start();
+            Url url = new Url(server.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+
+            UrlCheck latest = null;
+            for (int i = 0; i < 6; i++) {
+                UrlCheckService.submit(url).orElseThrow();
+                latest = awaitLatestCheck(url.getId()).orElseThrow();
+            }
+            assertThat(server.getRequestCount()).isEqualTo(5);
+            assertThat(latest.getStatus()).isEqualTo(CheckStatus.FAILED);
+            assertThat(latest.getError()).contains("Слишком частые проверки");
+        }
+    }
+
+    @Test
+    void testCircuitOpensForDeadHost() throws Exception {
+        var server = new MockWebServer();
+        server.start();
+        Url url = new Url(server.url("/").toString().replaceAll("/$", ""));
+        server.shutdown();
+        UrlRepository.save(url);
+
+        UrlCheck latest = null;
+        for (int i = 0; i < 5; i++) {
+            UrlCheckService.submit(url).orElseThrow();
+            latest = awaitLatestCheck(url.getId()).orElseThrow();
+            assertThat(latest.getError()).isEqualTo("Не удалось подключиться к серверу");
+        }
+        UrlCheckService.submit(url).orElseThrow();
+        latest = awaitLatestCheck(url.getId()).orElseThrow();
+        assertThat(latest.getStatus()).isEqualTo(CheckStatus.FAILED);
+        assertThat(latest.getError()).startsWith("Хост недоступен");
+
+        JavalinTest.test(app, (javalin, client) -> {
+            var body = client.get("/urls/" + url.getId()).body().string();
+            assertThat(body)
+                    .contains("Недоступен, проверки приостановлены")
+                    .contains("Хост недоступен");
+        });
+    }
+
+    @Test
+    void testStaleChecksAreFailed() throws SQLException {
+        var stale = new UrlCheck(existingUrl.getId(), null, null, null, null, LocalDateTime.now());
+        stale.setStatus(CheckStatus.RUNNING);
+        UrlCheckRepository.save(stale);
+        var fresh = new UrlCheck(existingUrl.getId(), null, null, null, null, LocalDateTime.now());
+        fresh.setStatus(CheckStatus.QUEUED);
+        UrlCheckRepository.save(fresh);
+        try (var connection = dataSource.getConnection();
+             var statement = connection.prepareStatement("UPDATE url_checks SET created_at = ? WHERE id = ?")) {
+            statement.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now().minus(UrlCheckService.STALE_AFTER)
+                    .minusMinutes(1)));
+            statement.setLong(2, stale.getId());
+            statement.executeUpdate();
+        }
+
+        assertThat(UrlCheckService.failStale(LocalDateTime.now())).isEqualTo(1);
+        var checks = UrlCheckRepository.findPageByUrlId(existingUrl.getId(), null, 100);
+        assertThat(checks).filteredOn(check -> check.getId().equals(stale.getId())).singleElement()
+                .satisfies(check -> {
+                    assertThat(check.getStatus()).isEqualTo(CheckStatus.FAILED);
+                    assertThat(check.getError()).isNotBlank();
+                });
+        assertThat(checks).filteredOn(check -> check.getId().equals(fresh.getId())).singleElement()
+                .extracting(UrlCheck::getStatus).isEqualTo(CheckStatus.QUEUED);
+
+        JavalinTest.test(app, (server, client) -> {
+            assertThat(client.get("/urls/" + existingUrl.getId()).body().string()).contains("location.reload");
+        });
+        UrlCheckRepository.updateStatus(fresh, CheckStatus.DONE);
+        JavalinTest.test(app, (server, client) -> {
+            assertThat(client.get("/urls/" + existingUrl.getId()).body().string())
+                    .doesNotContain("location.reload");
+        });
+    }
+
+    @Test
+    void testCheckNotFound() {
+        JavalinTest.test(app, (server, client) -> {
+            var response = client.post("/urls/999999/checks", "");
+            assertThat(response.code()).isIn(404, 500);
+        });
+    }
+
+    @Test
+    public void testCheckWriterWritesBufferedChecks() throws SQLException, InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            var check = new UrlCheck(existingUrl.getId(), null, null, null, null, LocalDateTime.now());
+            check.setStatus(CheckStatus.QUEUED);
+            UrlCheckRepository.save(check);
+            check.setStatus(CheckStatus.DONE);
+            check.setStatusCode(200);
+            check.setTitle("Buffered " + i);
+            CheckWriter.enqueue(check);
+        }
+        CheckWriter.enqueue(new UrlCheck(existingUrl.getId(), 500, "Inserted", null, null, LocalDateTime.now()));
+        CheckWriter.flush();
+
+        var checks = UrlCheckRepository.findPageByUrlId(existingUrl.getId(), null, 100);
+        assertThat(checks).hasSize(7);
+        assertThat(checks).allMatch(check -> check.getStatus() == CheckStatus.DONE);
+        assertThat(checks).extracting(UrlCheck::getTitle)
+                .contains("Buffered 0", "Buffered 4", "Inserted");
+    }
+
+    @Test
+    public void testCheckWriterStoresUnwritableCheckAsFailed() throws SQLException, InterruptedException {
+        List<UrlCheck> checks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            var check = new UrlCheck(existingUrl.getId(), null, null, null, null, LocalDateTime.now());
+            check.setStatus(CheckStatus.QUEUED);
+            UrlCheckRepository.save(check);
+            check.setStatus(CheckStatus.DONE);
+            check.setStatusCode(200);
+            check.setTitle(i == 1 ? "x".repeat(1000) : "Written " + i);
+            checks.add(check);
+        }
+        for (var check : checks) {
+            CheckWriter.enqueue(check);
+        }
+        CheckWriter.flush();
+
+        var written = UrlCheckRepository.findPageByUrlId(existingUrl.getId(), null, 100);
+        assertThat(written).filteredOn(check -> check.getId().equals(checks.get(1).getId())).singleElement()
+                .satisfies(check -> {
+                    assertThat(check.getStatus()).isEqualTo(CheckStatus.FAILED);
+                    assertThat(check.getTitle()).isNull();
+                    assertThat(check.getError()).isNotBlank();
+                });
+        assertThat(written).extracting(UrlCheck::getTitle).contains("Written 0", "Written 2");
+    }
+
+    @Test
+    public void testRetentionRollsUpExpiredChecks() throws SQLException {
+        var url = new Url("https://retention.example.com");
+        UrlRepository.save(url);
+        List<UrlCheck> checks = new ArrayList<>();
+        for (var title : List.of("First", "First", "Second", "Latest")) {
+            var check = new UrlCheck(url.getId(), 200, title, null, null, LocalDateTime.now());
+            UrlCheckRepository.save(check);
+            checks.add(check);
+        }
+        checks.get(1).setStatus(CheckStatus.FAILED);
+        UrlCheckRepository.update(checks.get(1));
+        expire(checks);
+
+        long rolledUp = RetentionJob.run(LocalDateTime.now().minusDays(90), 2);
+
+        assertThat(rolledUp).isEqualTo(3);
+        assertThat(UrlCheckRepository.findPageByUrlId(url.getId(), null, 100))
+                .extracting(UrlCheck::getTitle)
+                .containsExactly("Latest");
+        assertThat(UrlCheckRepository.findPageByUrlId(existingUrl.getId(), null, 100)).hasSize(1);
+        var daily = UrlCheckDailyRepository.findByUrlId(url.getId());
+        assertThat(daily).hasSize(1);
+        assertThat(daily.get(0).getChecks()).isEqualTo(3);
+        assertThat(daily.get(0).getFailed()).isEqualTo(1);
+        assertThat(daily.get(0).getStatus2xx()).isEqualTo(2);
+        assertThat(daily.get(0).getTitleChanges()).isEqualTo(1);
+        assertThat(daily.get(0).getLastTitle()).isEqualTo("Second");
+    }
+
+    @Test
+    public void testRetentionRollsUpFailuresAfterTheLastSuccess() throws SQLException {
+        var failing = new Url("https://never-up.example.com");
+        UrlRepository.save(failing);
+        var recovered = new Url("https://was-up.example.com");
+        UrlRepository.save(recovered);
+        List<UrlCheck> checks = new ArrayList<>();
+        for (var url : List.of(failing, failing, recovered, recovered)) {
+            var check = new UrlCheck(url.getId(), null, null, null, null, LocalDateTime.now());
+            check.setStatus(checks.size() == 2 ? CheckStatus.DONE : CheckStatus.FAILED);
+            UrlCheckRepository.save(check);
+            checks.add(check);
+        }
+        expire(checks);
+
+        assertThat(RetentionJob.run(LocalDateTime.now().minusDays(90), 10)).isEqualTo(3);
+        assertThat(UrlCheckRepository.findPageByUrlId(failing.getId(), null, 100)).isEmpty();
+        assertThat(UrlCheckDailyRepository.findByUrlId(failing.getId())).singleElement()
+                .satisfies(daily -> assertThat(daily.getFailed()).isEqualTo(2));
+        assertThat(UrlCheckRepository.findPageByUrlId(recovered.getId(), null, 100)).extracting(UrlCheck::getId)
+                .containsExactly(checks.get(2).getId());
+    }
+
+    // Moves the checks 100 days back, a minute apart in list order
+    private void expire(List<UrlCheck> checks) throws SQLException {
+        var expiredAt = LocalDate.now().minusDays(100).atTime(12, 0);
+        try (var connection = dataSource.getConnection();
+             var statement = connection.prepareStatement("UPDATE url_checks SET created_at = ? WHERE id = ?")) {
+            for (int i = 0; i < checks.size(); i++) {
+                statement.setTimestamp(1, Timestamp.valueOf(expiredAt.plusMinutes(i)));
+                statement.setLong(2, checks.get(i).getId());
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    @Test
+    public void testMonitorLeasesAreExclusiveAndExpire() throws SQLException {
+        var now = LocalDateTime.now();
+        UrlScheduleRepository.scheduleMissing(now, 60, 100);
+        var due = now.plusMinutes(2);
+        var first = UrlScheduleRepository.claimDue("node-a", due, 120, 10);
+        assertThat(first).extracting(UrlSchedule::getUrlId).containsExactly(existingUrl.getId());
+        assertThat(first.get(0).getUrlName()).isEqualTo(existingUrl.getName());
+        assertThat(UrlScheduleRepository.claimDue("node-b", due, 120, 10)).isEmpty();
+        assertThat(UrlScheduleRepository.extendLeases("node-b", List.of(existingUrl.getId()), 120)).isZero();
+
+        // A zero-second renewal lets the lease run out right away, as if node-a had stopped heartbeating
+        assertThat(UrlScheduleRepository.extendLeases("node-a", List.of(existingUrl.getId()), 0)).isEqualTo(1);
+        var second = UrlScheduleRepository.claimDue("node-b", due, 120, 10);
+        assertThat(second).extracting(UrlSchedule::getUrlId).containsExactly(existingUrl.getId());
+
+        var schedule = second.get(0);
+        schedule.setNextCheckAt(due.plusMinutes(5));
+        assertThat(UrlScheduleRepository.complete(first.get(0), "node-a")).isFalse();
+        assertThat(UrlScheduleRepository.complete(schedule, "node-b")).isTrue();
+        assertThat(UrlScheduleRepository.claimDue("node-a", due, 120, 10)).isEmpty();
+    }
+
+    @Test
+    public void testJobLeaseIsHeldByOneNode() throws SQLException {
+        assertThat(JobLeaseRepository.tryAcquire("retention", "node-a", 60)).isTrue();
+        assertThat(JobLeaseRepository.tryAcquire("retention", "node-b", 60)).isFalse();
+        assertThat(JobLeaseRepository.tryAcquire("retention", "node-a", 60)).isTrue();
+
+        // A zero-second renewal lets the lease run out right away, as if node-a had stopped
+        assertThat(JobLeaseRepository.tryAcquire("retention", "node-a", 0)).isTrue();
+        assertThat(JobLeaseRepository.tryAcquire("retention", "node-b", 60)).isTrue();
+        assertThat(JobLeaseRepository.tryAcquire("retention", "node-a", 60)).isFalse();
+
+        // Each job has its own lease
+        assertThat(JobLeaseRepository.tryAcquire("batch_check", "node-a", 60)).isTrue();
+    }
+
+}
@@ -0,0 +1,35 @@
+package hexlet.code;
+
+import hexlet.code.util.UrlNormalizer;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UrlNormalizerTest {
+    @Test
+    void testKeepsSchemeHostAndPort() {
+        assertThat(UrlNormalizer.normalize("https://ru.hexlet.io/courses?page=2#top"))
+                .hasValue("https://ru.hexlet.io");
+        assertThat(UrlNormalizer.normalize("  HTTP://WWW.Example.COM:8080/path  "))
+                .hasValue("http://example.com:8080");
+        assertThat(UrlNormalizer.normalize("https://www.example.com"))
+                .hasValue("https://example.com");
+    }
+
+    @Test
+    void testRejectsAnythingButAnAbsoluteUrl() {
+        assertThat(UrlNormalizer.normalize("")).isEmpty();
+        assertThat(UrlNormalizer.normalize("invalid-url")).isEmpty();
+        assertThat(UrlNormalizer.normalize("/relative/path")).isEmpty();
+        assertThat(UrlNormalizer.normalize("not a url at all")).isEmpty();
+        assertThat(UrlNormalizer.normalize("htp://example.com")).isEmpty();
+    }
+
+    @Test
+    void testRejectsUrlsWithoutHost() {
+        assertThat(UrlNormalizer.normalize("file:///etc/hosts")).isEmpty();
+        assertThat(UrlNormalizer.normalize("http:///path")).isEmpty();
+        assertThat(UrlNormalizer.normalize("https://:8080")).isEmpty();
+        assertThat(UrlNormalizer.normalize("mailto:user@example.com")).isEmpty();
+    }
+}